@@ -4,13 +4,37 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.reichel.command.output.Output;
 import org.reichel.command.output.SystemOutPrintOutputStringImpl;
+import org.reichel.jfr.Events;
+import org.reichel.jfr.Span;
+import org.reichel.metrics.Counter;
+import org.reichel.metrics.Gauge;
+import org.reichel.metrics.Histogram;
+import org.reichel.metrics.MetricsRegistry;
 
 
 public class Executor {
 
+	private static final Counter started = MetricsRegistry.getDefault().counter("exec.started");
+
+	private static final Counter failed = MetricsRegistry.getDefault().counter("exec.failed");
+
+	private static final Histogram processTime = MetricsRegistry.getDefault().histogram("exec.time");
+
+	private static final AtomicInteger running = new AtomicInteger();
+
+	static {
+		MetricsRegistry.getDefault().gauge("exec.running", new Gauge() {
+			@Override
+			public long getValue() {
+				return running.get();
+			}
+		});
+	}
+
 	private final String[] commands;
 
 	private Boolean showLog = true;
@@ -41,14 +65,35 @@ public class Executor {
 	}
 	
 	private Executor execute(){
+		final Span event = Events.begin(Events.PROCESS);
+		final long start = System.nanoTime();
 		this.process = startProcess(configProcess());
 		if(process != null){
+			started.increment();
+			running.incrementAndGet();
 			new Thread(new Runnable() {
 				@Override
 				public void run() {
-					emptyBuffer(process);
+					int exitCode = -1;
+					try {
+						emptyBuffer(process);
+						exitCode = process.waitFor();
+						if(exitCode != 0){
+							failed.increment();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						running.decrementAndGet();
+						processTime.updateElapsed(start);
+						if(event.shouldCommit()){
+							event.set("command", Executor.this.toString()).set("exitCode", exitCode).commit();
+						}
+					}
 				}
 			}).start();
+		} else {
+			failed.increment();
 		}
 		return this;
 	}
@@ -61,8 +106,13 @@ public class Executor {
 	
 	public int waitFor(){
 		if(this.process != null){
+			Span event = Events.begin(Events.PROCESS_WAIT);
 			try {
-				return this.process.waitFor();
+				int exitCode = this.process.waitFor();
+				if(event.shouldCommit()){
+					event.set("command", toString()).set("exitCode", exitCode).commit();
+				}
+				return exitCode;
 			} catch (InterruptedException e) {
 				this.output.output("Problemas ao esvaziar buffer: " + e.getClass().getName() + ":" + e.getMessage());
 			}
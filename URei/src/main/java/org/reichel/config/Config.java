@@ -2,30 +2,77 @@ package org.reichel.config;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
-import java.text.MessageFormat;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
+import org.reichel.file.ReplacingOutputStream;
+import org.reichel.jfr.Events;
+import org.reichel.jfr.Span;
+import org.reichel.metrics.Counter;
+import org.reichel.metrics.Histogram;
+import org.reichel.metrics.MetricsRegistry;
 import org.reichel.properties.SortedProperties;
+import org.reichel.text.MessageTemplate;
 
 public class Config {
 
 	private Logger logger = Logger.getLogger(Config.class);
 	
-	private SortedProperties property = new SortedProperties();
+	private static final long WATCH_DEBOUNCE = 200;
+
+	private static final Counter reloads = MetricsRegistry.getDefault().counter("config.reloads");
+
+	private static final Counter saves = MetricsRegistry.getDefault().counter("config.saves");
+
+	private static final Counter saveFailures = MetricsRegistry.getDefault().counter("config.save.failures");
+
+	private static final Histogram saveTime = MetricsRegistry.getDefault().histogram("config.save.time");
+	
+	private final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<ConfigSnapshot>();
+	
+	private final List<ConfigListener> listeners = new CopyOnWriteArrayList<ConfigListener>();
 	
 	private final String configPath;
 	
 	private final Charset charset;
 	
 	private final File fileConfig; 
+	
+	private WatchService watchService;
+	
+	private final Object saveLock = new Object();
+	
+	private final AtomicBoolean savePending = new AtomicBoolean(false);
+	
+	private ScheduledExecutorService writeBehindExecutor;
+	
+	private long writeBehindDelay;
+	
+	private volatile long lastSavedModified;
+	
+	private volatile long lastSavedLength;
 
 	public Config(Charset charset, String configPath){
 		if(charset == null){
@@ -43,15 +90,33 @@ public class Config {
 			logger.error("Configurao no encontrada: " + fileConfig.getAbsolutePath());
 			throw new IllegalArgumentException("Configurao no encontrada: " + fileConfig.getAbsolutePath());
 		}
-		loadProperty(fileConfig);
+		ConfigSnapshot loaded = loadProperty(fileConfig);
+		this.snapshot.set(loaded != null ? loaded : new ConfigSnapshot(new SortedProperties()));
 	}
 
-	private void loadProperty(File fileConfig) {
+	/**
+	 * Carrega o arquivo em uma nova instancia, sem alterar o snapshot publicado.
+	 * @return snapshot com o contedo do arquivo ou null se houver problemas ao ler o arquivo
+	 */
+	private ConfigSnapshot loadProperty(File fileConfig) {
+		SortedProperties property = new SortedProperties();
+		InputStreamReader reader = null;
 		try {
-			this.property.load(new InputStreamReader(new FileInputStream(fileConfig),this.charset));
+			reader = new InputStreamReader(new FileInputStream(fileConfig),this.charset);
+			property.load(reader);
+			return new ConfigSnapshot(property);
 		} catch (IOException e) {
 			logger.error("Erro ao carregar propriedade '" + this.configPath + "'. " + e.getClass().getName() + ":" + e.getMessage());
+		} finally {
+			if(reader != null){
+				try {
+					reader.close();
+				} catch (IOException e) {
+					logger.error("Problemas ao liberar recursos: " + e.getMessage());
+				}
+			}
 		}
+		return null;
 	}
 	
 	public Config(){
@@ -59,43 +124,318 @@ public class Config {
 	}
 	
 	public String get(String key) {
-		return (String) this.property.get(key);
+		return this.snapshot.get().get(key);
 	}
 
+	/**
+	 * Formata a propriedade como um padro de {@link java.text.MessageFormat}. O padro  interpretado
+	 * uma nica vez por snapshot e reaproveitado nas chamadas seguintes.
+	 * @param key chave da propriedade
+	 * @param args argumentos do padro
+	 * @return propriedade formatada
+	 */
 	public String get(String key, String... args){
-		return MessageFormat.format(get(key), (Object[]) args);
+		MessageTemplate template = this.snapshot.get().getTemplate(key);
+		if(template == null){
+			throw new IllegalArgumentException("Propriedade no encontrada: '" + key + "'");
+		}
+		return template.format((Object[]) args);
 	}
 	
 	public List<String> getKeys(){
-		List<String> result = new ArrayList<String>();
-		for(Object o : this.property.keySet()){
-			result.add((String) o );
-		}
-		return result;
+		return new ArrayList<String>(this.snapshot.get().getValues().keySet());
+	}
+	
+	/**
+	 * @param prefix prefixo das chaves, ex: "svn.trunk."
+	 * @return viso ordenada e no modificvel das propriedades cuja chave comea com o prefixo
+	 * @see ConfigSnapshot#getByPrefix(String)
+	 */
+	public SortedMap<String, String> getByPrefix(String prefix){
+		return this.snapshot.get().getByPrefix(prefix);
 	}
 	
+	/**
+	 * @param key chave de uma propriedade separada por ';', ex: "projetos"
+	 * @return lista no modificvel com os itens ou null se a propriedade no existir
+	 * @see ConfigSnapshot#getList(String)
+	 */
+	public List<String> getList(String key){
+		return this.snapshot.get().getList(key);
+	}
+	
+	/**
+	 * @return cpia imutvel e consistente de todas as propriedades no momento da chamada
+	 */
+	public ConfigSnapshot getSnapshot(){
+		return this.snapshot.get();
+	}
+	
+	/**
+	 * Grava o snapshot atual de forma segura: o contedo  escrito em um arquivo temporrio no mesmo
+	 * diretrio, forado para o disco e s ento renomeado sobre o arquivo de configurao. Uma queda
+	 * no meio da gravao deixa o arquivo anterior intacto.
+	 */
 	public void save(){
-		try {
-			this.property.store(new OutputStreamWriter(new FileOutputStream(this.configPath), this.charset), "ltima atualizao");
-		} catch (FileNotFoundException e) {
-			logger.error("Erro ao salvar propriedade '" + this.configPath + "'. " + e.getClass().getName() + ":" + e.getMessage());
-		} catch (IOException e) {
-			logger.error("Erro ao carregar propriedade '" + this.configPath + "'. " + e.getClass().getName() + ":" + e.getMessage());		
+		this.savePending.set(false);
+		long start = System.nanoTime();
+		synchronized (this.saveLock) {
+			SortedProperties property = new SortedProperties();
+			property.putAll(this.snapshot.get().getValues());
+			File temp = new File(this.fileConfig.getAbsoluteFile().getParentFile(), this.fileConfig.getName() + ".tmp");
+			FileOutputStream fos = null;
+			try {
+				fos = new FileOutputStream(temp);
+				OutputStreamWriter writer = new OutputStreamWriter(fos, this.charset);
+				property.store(writer, "ltima atualizao");
+				writer.flush();
+				fos.getFD().sync();
+				fos.close();
+				fos = null;
+				replaceConfigFile(temp.toPath());
+				this.lastSavedModified = this.fileConfig.lastModified();
+				this.lastSavedLength = this.fileConfig.length();
+				saves.increment();
+				saveTime.updateElapsed(start);
+			} catch (IOException e) {
+				saveFailures.increment();
+				logger.error("Erro ao salvar propriedade '" + this.configPath + "'. " + e.getClass().getName() + ":" + e.getMessage());
+				if(fos != null){
+					try {
+						fos.close();
+					} catch (IOException ex) {
+						logger.error("Problemas ao liberar recursos: " + ex.getMessage());
+					}
+				}
+				temp.delete();
+			}
+		}
+	}
+
+	private void replaceConfigFile(Path temp) throws IOException {
+		ReplacingOutputStream.replace(temp, this.fileConfig.getAbsoluteFile().toPath());
+	}
+	
+	/**
+	 * Ativa a gravao adiada: cada {@link #put(String, String)} e {@link #saveAndReload()} agenda uma
+	 * gravao para daqui a delay milisegundos e todas as alteraes feitas nesse intervalo so gravadas
+	 * de uma s vez. Gravaes pendentes so feitas por {@link #flush()} e ao finalizar a JVM.
+	 * @param delay intervalo em milisegundos para agrupar as alteraes
+	 * @return a instancia de Config
+	 */
+	public synchronized Config writeBehind(long delay){
+		if(delay <= 0){
+			throw new IllegalArgumentException("Parameter delay must be greater than zero.");
+		}
+		this.writeBehindDelay = delay;
+		if(this.writeBehindExecutor == null){
+			this.writeBehindExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Config-writeBehind");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}));
+		}
+		return this;
+	}
+	
+	/**
+	 * Grava imediatamente as alteraes pendentes da gravao adiada, se houver.
+	 */
+	public void flush(){
+		if(this.savePending.get()){
+			save();
+		}
+	}
+	
+	private void requestSave(){
+		ScheduledExecutorService executor;
+		long delay;
+		synchronized (this) {
+			executor = this.writeBehindExecutor;
+			delay = this.writeBehindDelay;
+		}
+		if(executor == null){
+			save();
+		} else if(this.savePending.compareAndSet(false, true)){
+			executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
 		}
 	}
 	
 	public void put(String key, String value){
-		this.property.setProperty(key, value);
+		if(key == null){
+			throw new IllegalArgumentException("Parameter key cannot be null.");
+		}
+		if(value == null){
+			throw new IllegalArgumentException("Parameter value cannot be null.");
+		}
+		ConfigSnapshot current;
+		ConfigSnapshot updated;
+		do {
+			current = this.snapshot.get();
+			updated = current.with(key, value);
+		} while(!this.snapshot.compareAndSet(current, updated));
+		notifyListeners(current, updated);
+		if(isWriteBehind()){
+			requestSave();
+		}
 	}
 	
+	private synchronized boolean isWriteBehind(){
+		return this.writeBehindExecutor != null;
+	}
+	
+	/**
+	 * Rel o arquivo e publica o novo contedo de uma s vez, leitores concorrentes enxergam
+	 * sempre o snapshot anterior ou o novo, nunca um contedo parcial.
+	 * Se houver problemas ao ler o arquivo o snapshot atual  mantido.
+	 */
 	public void reload(){
-		this.property.clear();
-		loadProperty(new File(this.configPath));
+		Span event = Events.begin(Events.CONFIG_RELOAD);
+		ConfigSnapshot loaded = loadProperty(new File(this.configPath));
+		if(loaded != null){
+			reloads.increment();
+			ConfigSnapshot previous = this.snapshot.getAndSet(loaded);
+			loaded.retainTemplates(previous);
+			notifyListeners(previous, loaded);
+		}
+		if(event.shouldCommit()){
+			event.set("path", this.configPath).set("success", loaded != null)
+				.set("keys", loaded != null ? loaded.getValues().size() : 0).commit();
+		}
 	}
 	
+	/**
+	 * Grava as propriedades. O snapshot em memria j  o contedo gravado, por isso o arquivo
+	 * no  lido novamente. Com a gravao adiada ativa apenas agenda a gravao.
+	 * @see #writeBehind(long)
+	 */
 	public void saveAndReload(){
-		save();
-		reload();
+		requestSave();
+	}
+
+	public void addListener(ConfigListener listener){
+		if(listener == null){
+			throw new IllegalArgumentException("Parameter listener cannot be null.");
+		}
+		this.listeners.add(listener);
+	}
+	
+	public void removeListener(ConfigListener listener){
+		this.listeners.remove(listener);
+	}
+	
+	private void notifyListeners(ConfigSnapshot previous, ConfigSnapshot current) {
+		if(this.listeners.isEmpty()){
+			return;
+		}
+		Set<String> changedKeys = previous.changedKeys(current);
+		if(!changedKeys.isEmpty()){
+			for(ConfigListener listener : this.listeners){
+				try {
+					listener.configChanged(this, changedKeys);
+				} catch (RuntimeException e) {
+					logger.error("Erro ao notificar alterao de configurao: " + e.getClass().getName() + ":" + e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Inicia uma thread que observa o diretrio do arquivo de configurao e executa {@link #reload()}
+	 * sempre que o arquivo for alterado. Alteraes em sequncia dentro de um pequeno intervalo
+	 * resultam em um nico reload.
+	 * @return a instancia de Config
+	 */
+	public synchronized Config watch(){
+		if(this.watchService != null){
+			return this;
+		}
+		final Path configFile = this.fileConfig.getAbsoluteFile().toPath();
+		final WatchService watchService;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			configFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			logger.error("Erro ao observar propriedade '" + this.configPath + "'. " + e.getClass().getName() + ":" + e.getMessage());
+			return this;
+		}
+		this.watchService = watchService;
+		Thread watcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watchConfigFile(watchService, configFile.getFileName());
+			}
+		}, "Config-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+		return this;
+	}
+	
+	public synchronized void unwatch(){
+		if(this.watchService != null){
+			try {
+				this.watchService.close();
+			} catch (IOException e) {
+				logger.error("Problemas ao liberar recursos: " + e.getMessage());
+			}
+			this.watchService = null;
+		}
+	}
+	
+	private void watchConfigFile(WatchService watchService, Path fileName) {
+		try {
+			while(true){
+				WatchKey key = watchService.take();
+				boolean changed = isChanged(key, fileName);
+				while(changed){
+					Thread.sleep(WATCH_DEBOUNCE);
+					WatchKey next = watchService.poll();
+					if(next == null){
+						break;
+					}
+					isChanged(next, fileName);
+				}
+				if(changed && !isLastSaved()){
+					reload();
+				}
+			}
+		} catch (InterruptedException e) {
+			unwatch();
+		} catch (ClosedWatchServiceException e) {
+			//unwatch() foi chamado
+		}
+	}
+
+	/**
+	 * @return true se o arquivo ainda  o gravado pelo ltimo {@link #save()}
+	 */
+	private boolean isLastSaved() {
+		return this.fileConfig.lastModified() == this.lastSavedModified && this.fileConfig.length() == this.lastSavedLength;
+	}
+
+	private boolean isChanged(WatchKey key, Path fileName) {
+		boolean changed = false;
+		for(WatchEvent<?> event : key.pollEvents()){
+			if(fileName.equals(event.context())){
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
 	}
 
 	public String getConfigPath() {
@@ -0,0 +1,8 @@
+package org.reichel.config;
+
+import java.util.Set;
+
+public interface ConfigListener {
+
+	void configChanged(Config config, Set<String> changedKeys);
+}
@@ -0,0 +1,155 @@
+package org.reichel.config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.reichel.text.MessageTemplate;
+
+/**
+ * Cpia imutvel das propriedades de um {@link Config} em um determinado momento.
+ * Como nunca  alterada pode ser lida por qualquer thread sem sincronizao,
+ * alteraes geram uma nova instancia que substitui a anterior de forma atmica.
+ */
+public final class ConfigSnapshot {
+
+	public static final String LIST_SEPARATOR = ";";
+
+	private final SortedMap<String, String> values;
+
+	private final ConcurrentMap<String, MessageTemplate> templates = new ConcurrentHashMap<String, MessageTemplate>();
+
+	private final ConcurrentMap<String, List<String>> lists = new ConcurrentHashMap<String, List<String>>();
+
+	ConfigSnapshot(Map<?, ?> source){
+		TreeMap<String, String> values = new TreeMap<String, String>();
+		for(Entry<?, ?> entry : source.entrySet()){
+			values.put((String) entry.getKey(), (String) entry.getValue());
+		}
+		this.values = Collections.unmodifiableSortedMap(values);
+	}
+
+	public String get(String key){
+		return this.values.get(key);
+	}
+
+	/**
+	 * @param key chave da propriedade
+	 * @return padro da propriedade j interpretado ou null se a propriedade no existir
+	 */
+	public MessageTemplate getTemplate(String key){
+		MessageTemplate template = this.templates.get(key);
+		if(template == null){
+			String pattern = this.values.get(key);
+			if(pattern == null){
+				return null;
+			}
+			template = MessageTemplate.compile(pattern);
+			this.templates.putIfAbsent(key, template);
+		}
+		return template;
+	}
+
+	/**
+	 * Propriedades cuja chave comea com o prefixo, ex: getByPrefix("svn.trunk.") retorna svn.trunk.cm, svn.trunk.fn...
+	 * O mapa retornado  uma viso ordenada do prprio snapshot, nenhuma propriedade  copiada.
+	 * @param prefix prefixo das chaves
+	 * @return mapa ordenado e no modificvel com as propriedades encontradas
+	 */
+	public SortedMap<String, String> getByPrefix(String prefix){
+		if(prefix == null){
+			throw new IllegalArgumentException("Parameter prefix cannot be null.");
+		}
+		return this.values.subMap(prefix, prefix + Character.MAX_VALUE);
+	}
+
+	/**
+	 * Propriedade no formato de lista separada por ';', ex: projetos=cm;fn;cml
+	 * A lista  montada uma nica vez por snapshot e reaproveitada nas chamadas seguintes.
+	 * @param key chave da propriedade
+	 * @return lista no modificvel com os itens sem espaos nas extremidades ou null se a propriedade no existir
+	 */
+	public List<String> getList(String key){
+		List<String> list = this.lists.get(key);
+		if(list == null){
+			String value = this.values.get(key);
+			if(value == null){
+				return null;
+			}
+			list = Collections.unmodifiableList(Arrays.asList(split(value)));
+			this.lists.putIfAbsent(key, list);
+		}
+		return list;
+	}
+
+	private String[] split(String value) {
+		if(value.trim().length() == 0){
+			return new String[0];
+		}
+		String[] items = value.split(LIST_SEPARATOR);
+		for(int i = 0; i < items.length; i++){
+			items[i] = items[i].trim();
+		}
+		return items;
+	}
+
+	/**
+	 * @return mapa ordenado e no modificvel com todas as propriedades
+	 */
+	public SortedMap<String, String> getValues() {
+		return values;
+	}
+
+	ConfigSnapshot with(String key, String value){
+		TreeMap<String, String> values = new TreeMap<String, String>(this.values);
+		values.put(key, value);
+		return new ConfigSnapshot(values).retainTemplates(this);
+	}
+
+	/**
+	 * Reaproveita os padres e listas j interpretados do snapshot anterior cujo valor no mudou.
+	 * @param previous snapshot anterior
+	 * @return a prpria instancia
+	 */
+	ConfigSnapshot retainTemplates(ConfigSnapshot previous){
+		for(Entry<String, MessageTemplate> entry : previous.templates.entrySet()){
+			if(entry.getValue().getPattern().equals(this.values.get(entry.getKey()))){
+				this.templates.putIfAbsent(entry.getKey(), entry.getValue());
+			}
+		}
+		for(Entry<String, List<String>> entry : previous.lists.entrySet()){
+			String value = previous.values.get(entry.getKey());
+			if(value != null && value.equals(this.values.get(entry.getKey()))){
+				this.lists.putIfAbsent(entry.getKey(), entry.getValue());
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @param other snapshot a ser comparado
+	 * @return chaves includas, removidas ou com valor diferente entre os dois snapshots
+	 */
+	Set<String> changedKeys(ConfigSnapshot other){
+		Set<String> result = new TreeSet<String>();
+		for(Entry<String, String> entry : this.values.entrySet()){
+			if(!entry.getValue().equals(other.values.get(entry.getKey()))){
+				result.add(entry.getKey());
+			}
+		}
+		for(String key : other.values.keySet()){
+			if(!this.values.containsKey(key)){
+				result.add(key);
+			}
+		}
+		return Collections.unmodifiableSet(result);
+	}
+}
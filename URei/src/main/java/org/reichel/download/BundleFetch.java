@@ -0,0 +1,254 @@
+package org.reichel.download;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.log4j.Logger;
+import org.reichel.command.output.Output;
+import org.reichel.file.ContentStore;
+import org.reichel.file.ReplacingOutputStream;
+import org.reichel.metrics.Counter;
+import org.reichel.metrics.Histogram;
+import org.reichel.metrics.MetricsRegistry;
+
+/**
+ * Baixa vrios arquivos em uma nica requisio a um {@link BundleHandler}, em vez de uma requisio por arquivo
+ * como o {@link DownloadFile}. Em links com latncia alta as idas e voltas de cada arquivo dominam o tempo
+ * de atualizaes com centenas de jars e recursos pequenos.
+ * Cada arquivo substitui o destino assim que chega completo, sem esperar o pacote inteiro; um arquivo
+ * interrompido no meio mantm a verso anterior.
+ * Exemplo de utilizao:
+ * <pre>
+ *   BundleFetch fetch = new BundleFetch(new SystemOutPrintOutputIntegerImpl(), "http://servidor/bundle");
+ *   fetch.fetch(Arrays.asList("lib/core.jar", "lib/util.jar", "config/app.properties"), "c:\\unimed\\app");
+ *   if(!fetch.getMissing().isEmpty()){
+ *     ...
+ *   }
+ * </pre>
+ */
+public class BundleFetch {
+
+	private static final Logger logger = Logger.getLogger(BundleFetch.class);
+
+	private static final Counter bundleRequests = MetricsRegistry.getDefault().counter("download.bundle.requests");
+
+	private static final Counter bundleFiles = MetricsRegistry.getDefault().counter("download.bundle.files");
+
+	private static final Counter bundleBytes = MetricsRegistry.getDefault().counter("download.bundle.bytes");
+
+	private static final Histogram bundleTime = MetricsRegistry.getDefault().histogram("download.bundle.time");
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Output<Integer> output;
+
+	private final String bundleUrl;
+
+	private int batchSize = 500;
+
+	private int readTimeout = 10000;
+
+	private ContentStore contentStore;
+
+	private final List<File> received = new ArrayList<File>();
+
+	private final Set<String> missing = new LinkedHashSet<String>();
+
+	/**
+	 * @param output recebe a quantidade de bytes gravados a cada bloco, como no {@link DownloadFile}
+	 * @param bundleUrl URL do {@link BundleHandler}, ex: "http://servidor/bundle"
+	 */
+	public BundleFetch(Output<Integer> output, String bundleUrl){
+		if(output == null){
+			throw new IllegalArgumentException("Parameter output cannot be null.");
+		}
+		if(bundleUrl == null){
+			throw new IllegalArgumentException("Parameter bundleUrl cannot be null.");
+		}
+		this.output = output;
+		this.bundleUrl = bundleUrl;
+	}
+
+	/**
+	 * @param batchSize quantidade mxima de arquivos por requisio, deve respeitar o {@link BundleHandler#maxFiles(int)} do servidor
+	 * @return a instancia de BundleFetch
+	 */
+	public BundleFetch batchSize(int batchSize){
+		if(batchSize < 1){
+			throw new IllegalArgumentException("Parameter batchSize must be greater than zero.");
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * @param readTimeout tempo mximo em milisegundos sem receber dados
+	 * @return a instancia de BundleFetch
+	 */
+	public BundleFetch readTimeout(int readTimeout){
+		if(readTimeout < 0){
+			throw new IllegalArgumentException("Parameter readTimeout cannot be negative.");
+		}
+		this.readTimeout = readTimeout;
+		return this;
+	}
+
+	/**
+	 * @param contentStore repositrio usado na gravao dos arquivos, ver {@link ContentStore#write(InputStream, Path)}; null grava cpias
+	 * @return a instancia de BundleFetch
+	 */
+	public BundleFetch contentStore(ContentStore contentStore){
+		this.contentStore = contentStore;
+		return this;
+	}
+
+	/**
+	 * Baixa os arquivos mantendo os caminhos relativos dentro do diretrio de destino. Os arquivos existentes so substitudos.
+	 * @param paths caminhos relativos ao repositrio do servidor, separados por '/' ou '\\'
+	 * @param targetFolderPath diretrio de destino
+	 * @return a instancia de BundleFetch, os arquivos recebidos ficam em {@link #getReceived()} e os no encontrados em {@link #getMissing()}
+	 * @throws IOException caso uma requisio falhe, os arquivos recebidos at a falha permanecem gravados
+	 */
+	public BundleFetch fetch(Collection<String> paths, String targetFolderPath) throws IOException {
+		if(paths == null){
+			throw new IllegalArgumentException("Parameter paths cannot be null.");
+		}
+		if(targetFolderPath == null){
+			throw new IllegalArgumentException("Parameter targetFolderPath cannot be null.");
+		}
+		this.received.clear();
+		this.missing.clear();
+		Path targetFolder = new File(targetFolderPath).getAbsoluteFile().toPath().normalize();
+		Set<String> unique = new LinkedHashSet<String>();
+		for(String path : paths){
+			unique.add(normalize(path));
+		}
+		List<String> batch = new ArrayList<String>();
+		for(String path : unique){
+			batch.add(path);
+			if(batch.size() == this.batchSize){
+				fetchBatch(batch, targetFolder);
+				batch.clear();
+			}
+		}
+		if(!batch.isEmpty()){
+			fetchBatch(batch, targetFolder);
+		}
+		return this;
+	}
+
+	private void fetchBatch(List<String> batch, Path targetFolder) throws IOException {
+		long start = System.nanoTime();
+		Set<String> pending = new LinkedHashSet<String>(batch);
+		HttpURLConnection connection = (HttpURLConnection) new URL(this.bundleUrl).openConnection();
+		try {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setUseCaches(false);
+			connection.setReadTimeout(this.readTimeout);
+			connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+			OutputStream os = connection.getOutputStream();
+			try {
+				for(String path : batch){
+					os.write((path + "\n").getBytes(UTF8));
+				}
+			} finally {
+				os.close();
+			}
+			if(HttpURLConnection.HTTP_OK != connection.getResponseCode()){
+				throw new IOException("Servidor respondeu " + connection.getResponseCode() + " para o pacote de " + batch.size() + " arquivos em '" + this.bundleUrl + "'.");
+			}
+			bundleRequests.increment();
+			ZipInputStream zis = new ZipInputStream(new BufferedInputStream(connection.getInputStream(), 64 * 1024), UTF8);
+			try {
+				ZipEntry entry;
+				while((entry = zis.getNextEntry()) != null){
+					String name = entry.getName();
+					if(!pending.remove(name)){
+						logger.warn("Arquivo no pedido '" + name + "' ignorado no pacote de '" + this.bundleUrl + "'.");
+						continue;
+					}
+					Path target = targetFolder.resolve(name).normalize();
+					if(!target.startsWith(targetFolder)){
+						throw new IOException("Caminho '" + name + "' fora do diretrio de destino.");
+					}
+					save(zis, target);
+					this.received.add(target.toFile());
+				}
+			} finally {
+				zis.close();
+			}
+		} finally {
+			connection.disconnect();
+		}
+		this.missing.addAll(pending);
+		bundleTime.updateElapsed(start);
+	}
+
+	private void save(ZipInputStream zis, Path target) throws IOException {
+		Files.createDirectories(target.getParent());
+		if(this.contentStore != null){
+			this.contentStore.write(zis, target);
+			long bytes = Files.size(target);
+			bundleBytes.add(bytes);
+			bundleFiles.increment();
+			this.output.output((int) Math.min(bytes, Integer.MAX_VALUE));
+			return;
+		}
+		ReplacingOutputStream os = new ReplacingOutputStream(target);
+		try {
+			byte[] buffer = new byte[8192];
+			int bytes;
+			while((bytes = zis.read(buffer)) != -1){
+				os.write(buffer, 0, bytes);
+				this.output.output(bytes);
+				bundleBytes.add(bytes);
+			}
+			os.commit();
+		} finally {
+			os.close();
+		}
+		bundleFiles.increment();
+	}
+
+	private String normalize(String path) {
+		String normalized = path.replace('\\', '/');
+		while(normalized.startsWith("/")){
+			normalized = normalized.substring(1);
+		}
+		return normalized;
+	}
+
+	/**
+	 * @return arquivos gravados pelo ltimo {@link #fetch(Collection, String)}
+	 */
+	public List<File> getReceived() {
+		return received;
+	}
+
+	/**
+	 * @return caminhos pedidos no ltimo {@link #fetch(Collection, String)} que o servidor no enviou
+	 */
+	public Set<String> getMissing() {
+		return missing;
+	}
+
+	public String getBundleUrl() {
+		return bundleUrl;
+	}
+}
@@ -0,0 +1,149 @@
+package org.reichel.download;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.log4j.Logger;
+import org.reichel.metrics.Counter;
+import org.reichel.metrics.MetricsRegistry;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Componente do servidor que responde vrios arquivos em uma nica requisio, evitando uma conexo e uma ida e volta
+ * por arquivo. Recebe um POST com os caminhos relativos ao repositrio, um por linha em UTF-8, e responde um zip
+ * gerado enquanto  enviado, na ordem pedida. Caminhos inexistentes ou fora do repositrio so omitidos, o
+ * {@link BundleFetch} informa quais no chegaram.
+ * Pode ser registrado em qualquer com.sun.net.httpserver.HttpServer, ex:
+ * <pre>
+ *   HttpServer server = HttpServer.create(new InetSocketAddress(8080), 0);
+ *   server.createContext("/bundle", new BundleHandler("c:\\atualizacao"));
+ *   server.start();
+ * </pre>
+ */
+public class BundleHandler implements HttpHandler {
+
+	private static final Logger logger = Logger.getLogger(BundleHandler.class);
+
+	private static final Counter bundles = MetricsRegistry.getDefault().counter("bundle.served");
+
+	private static final Counter bundledFiles = MetricsRegistry.getDefault().counter("bundle.served.files");
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Path repository;
+
+	private int maxFiles = 5000;
+
+	/**
+	 * @param repositoryPath diretrio com os arquivos servidos
+	 */
+	public BundleHandler(String repositoryPath){
+		if(repositoryPath == null){
+			throw new IllegalArgumentException("Parameter repositoryPath cannot be null.");
+		}
+		this.repository = new File(repositoryPath).getAbsoluteFile().toPath().normalize();
+	}
+
+	/**
+	 * @param maxFiles quantidade mxima de caminhos por requisio, pedidos maiores so recusados com erro 413
+	 * @return a instancia de BundleHandler
+	 */
+	public BundleHandler maxFiles(int maxFiles){
+		if(maxFiles < 1){
+			throw new IllegalArgumentException("Parameter maxFiles must be greater than zero.");
+		}
+		this.maxFiles = maxFiles;
+		return this;
+	}
+
+	/**
+	 * Uma falha depois do envio dos cabealhos  propagada sem fechar o zip nem a resposta: o servidor derruba
+	 * a conexo e o {@link BundleFetch} recebe um erro, em vez de um pacote bem formado com um arquivo incompleto.
+	 */
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		boolean sent = false;
+		try {
+			if(!"POST".equals(exchange.getRequestMethod())){
+				exchange.getResponseHeaders().set("Allow", "POST");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			List<String> paths = readPaths(exchange);
+			if(paths == null){
+				exchange.sendResponseHeaders(413, -1);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Type", "application/zip");
+			exchange.sendResponseHeaders(200, 0);
+			sent = true;
+			ZipOutputStream zos = new ZipOutputStream(exchange.getResponseBody(), UTF8);
+			//jars j so compactados, a compactao mais rpida basta para os demais arquivos
+			zos.setLevel(Deflater.BEST_SPEED);
+			for(String path : paths){
+				Path file = this.repository.resolve(path).normalize();
+				//caminhos com "." ou ".." seriam recusados pelo BundleFetch, ficam como no encontrados
+				if(!file.startsWith(this.repository) || !this.repository.relativize(file).toString().replace('\\', '/').equals(path) || !Files.isRegularFile(file)){
+					continue;
+				}
+				ZipEntry entry = new ZipEntry(path);
+				entry.setTime(Files.getLastModifiedTime(file).toMillis());
+				zos.putNextEntry(entry);
+				Files.copy(file, zos);
+				zos.closeEntry();
+				bundledFiles.increment();
+			}
+			zos.close();
+			exchange.close();
+			bundles.increment();
+		} catch (IOException e) {
+			logger.error("Problemas ao enviar pacote para " + exchange.getRemoteAddress() + ": " + e.getMessage());
+			if(sent){
+				throw e;
+			}
+		} finally {
+			if(!sent){
+				exchange.close();
+			}
+		}
+	}
+
+	/**
+	 * @return caminhos pedidos separados por '/', ou null se excederem o mximo
+	 */
+	private List<String> readPaths(HttpExchange exchange) throws IOException {
+		List<String> paths = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), UTF8));
+		try {
+			String line;
+			while((line = reader.readLine()) != null){
+				String path = line.trim().replace('\\', '/');
+				while(path.startsWith("/")){
+					path = path.substring(1);
+				}
+				if("".equals(path)){
+					continue;
+				}
+				if(paths.size() == this.maxFiles){
+					return null;
+				}
+				paths.add(path);
+			}
+		} finally {
+			reader.close();
+		}
+		return paths;
+	}
+}
@@ -3,25 +3,68 @@ package org.reichel.download;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLDecoder;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.reichel.command.output.Output;
+import org.reichel.file.ContentStore;
+import org.reichel.file.ReplacingOutputStream;
+import org.reichel.jfr.Events;
+import org.reichel.jfr.Span;
+import org.reichel.metrics.Counter;
+import org.reichel.metrics.Gauge;
+import org.reichel.metrics.Histogram;
+import org.reichel.metrics.MetricsRegistry;
 
 public class DownloadFile {
 
 	private static final Logger logger = Logger.getLogger(DownloadFile.class);
+
+	private static final Counter downloadedFiles = MetricsRegistry.getDefault().counter("download.files");
+
+	private static final Counter downloadedBytes = MetricsRegistry.getDefault().counter("download.bytes");
+
+	private static final Histogram downloadTime = MetricsRegistry.getDefault().histogram("download.time");
+
+	private static final Histogram downloadRate = MetricsRegistry.getDefault().histogram("download.rate");
+
+	private static final Counter peerHits = MetricsRegistry.getDefault().counter("download.peer.hits");
+
+	private static final Counter peerMisses = MetricsRegistry.getDefault().counter("download.peer.misses");
+
+	private static final Counter peerStale = MetricsRegistry.getDefault().counter("download.peer.stale");
+
+	private static final AtomicInteger activeDownloads = new AtomicInteger();
+
+	/**
+	 * Extenso do arquivo publicado na origem ao lado de cada arquivo, com o SHA-256 do contedo em hexadecimal.
+	 */
+	public static final String DIGEST_EXTENSION = ".sha256";
+
+	static {
+		MetricsRegistry.getDefault().gauge("download.active", new Gauge() {
+			@Override
+			public long getValue() {
+				return activeDownloads.get();
+			}
+		});
+	}
 	
 	private final String remoteTargetFolder;
 	
@@ -39,6 +82,12 @@ public class DownloadFile {
 	
 	private File downloadedFile;
 	
+	private String[] peers = new String[0];
+	
+	private PeerCache peerCache;
+	
+	private ContentStore contentStore;
+	
 	public DownloadFile(Output<Integer> output, String path, Charset charset) throws UnsupportedEncodingException{
 		this.output = output;
 		this.remoteTargetFolder = URLDecoder.decode(path, charset.name());
@@ -48,6 +97,41 @@ public class DownloadFile {
 		this(output, remoteTargetFolder, Charset.forName("UTF-8"));
 	}
 	
+	/**
+	 * Computadores da rede local consultados antes da origem pelo mtodo {@link #download(String, String)}.
+	 * O arquivo do computador  usado apenas se o SHA-256 do contedo recebido for o publicado pela origem em
+	 * "arquivo{@value #DIGEST_EXTENSION}" (ver {@link #writeDigest(File)}), de forma que somente o resumo atravessa
+	 * o link com a origem. Sem a origem ou sem o resumo publicado os computadores da rede no so consultados.
+	 * @param peerUrls endereo do {@link PeerCacheServer} de cada computador, ex: "http://estacao2:8765"
+	 * @return A instancia de DownloadFile
+	 */
+	public DownloadFile peers(String... peerUrls){
+		if(peerUrls == null){
+			throw new IllegalArgumentException("Parameter peerUrls cannot be null.");
+		}
+		this.peers = peerUrls.clone();
+		return this;
+	}
+	
+	/**
+	 * @param peerCache cache onde os arquivos baixados so copiados para serem servidos aos outros computadores, null para no copiar
+	 * @return A instancia de DownloadFile
+	 */
+	public DownloadFile peerCache(PeerCache peerCache){
+		this.peerCache = peerCache;
+		return this;
+	}
+	
+	/**
+	 * @param contentStore repositrio onde os arquivos baixados so includos; um arquivo j existente no repositrio
+	 *  substitudo por um link, null para no usar o repositrio
+	 * @return A instancia de DownloadFile
+	 */
+	public DownloadFile contentStore(ContentStore contentStore){
+		this.contentStore = contentStore;
+		return this;
+	}
+	
 	public DownloadFile connect(String fileName){
 		if(fileName == null || "".equals(fileName)){
 			throw new IllegalArgumentException("fileName no pode ser vazio ou nulo.");
@@ -123,13 +207,142 @@ public class DownloadFile {
 				throw new IllegalArgumentException("fileName: '" + fileName + "' no  o mesmo que this.fileName: '" + this.fileName + "' utilize o mtodo connect para atualizar o fileName.");
 			}
 		} else {
+			if(downloadFromPeer(fileName, targetFolderPath)){
+				return this;
+			}
 			connect(fileName);
 		}
-		saveFile(prepareTargetFolder(fileName, targetFolderPath));
+		saveOrigin(prepareTargetFolder(fileName, targetFolderPath));
 		this.connected = false;
 		return this;
 	}
 
+	private boolean downloadFromPeer(String fileName, String targetFolderPath) {
+		if(this.peers.length == 0 || !isURL(fileName)){
+			return false;
+		}
+		URL origin = this.url;
+		String expected = null;
+		for(String peer : this.peers){
+			URLConnection peerConnection = null;
+			try {
+				URL peerUrl = new URL(trimSlash(peer) + new URI(null, null, "/" + PeerCache.keyOf(origin), null).toASCIIString());
+				peerConnection = peerUrl.openConnection();
+				peerConnection.setConnectTimeout(500);
+				peerConnection.setReadTimeout(2000);
+				peerConnection.setUseCaches(false);
+				if(!(peerConnection instanceof HttpURLConnection) || HttpURLConnection.HTTP_OK != ((HttpURLConnection) peerConnection).getResponseCode()){
+					continue;
+				}
+				if(expected == null){
+					try {
+						expected = originDigest(origin);
+					} catch (IOException e) {
+						logger.warn("Resumo SHA-256 de '" + origin + "' indisponvel, arquivo da rede local no ser utilizado: " + e.getMessage());
+						break;
+					}
+				}
+				this.fileName = fileName;
+				this.url = peerUrl;
+				this.connection = peerConnection;
+				this.fileLength = peerConnection.getContentLength();
+				this.connected = true;
+				peerConnection = null;
+				if(!saveFile(prepareTargetFolder(fileName, targetFolderPath), expected)){
+					this.connected = false;
+					peerStale.increment();
+					logger.warn("Arquivo de " + peerUrl + " difere do publicado pela origem, descartado.");
+					continue;
+				}
+				this.connected = false;
+				peerHits.increment();
+				if(this.peerCache != null){
+					this.peerCache.store(origin, this.downloadedFile, this.connection.getLastModified());
+				}
+				adopt();
+				return true;
+			} catch (IOException e) {
+				this.connected = false;
+				logger.debug("Problemas ao baixar '" + fileName + "' de " + peer + ": " + e.getMessage());
+			} catch (URISyntaxException e) {
+				logger.error("Problemas ao montar URL: " + e.getMessage());
+			} finally {
+				if(peerConnection instanceof HttpURLConnection){
+					((HttpURLConnection) peerConnection).disconnect();
+				}
+			}
+		}
+		this.url = origin;
+		peerMisses.increment();
+		return false;
+	}
+
+	private String trimSlash(String peer) {
+		return peer.endsWith("/") ? peer.substring(0, peer.length() - 1) : peer;
+	}
+
+	/**
+	 * @return SHA-256 publicado pela origem em "arquivo{@value #DIGEST_EXTENSION}", em minsculas
+	 * @throws IOException se a origem estiver inacessvel ou o resumo no estiver publicado ou for invlido
+	 */
+	private String originDigest(URL origin) throws IOException {
+		URLConnection originConnection = new URL(origin, origin.getPath() + DIGEST_EXTENSION).openConnection();
+		originConnection.setConnectTimeout(5000);
+		originConnection.setReadTimeout(5000);
+		originConnection.setUseCaches(false);
+		try {
+			if(originConnection instanceof HttpURLConnection){
+				int code = ((HttpURLConnection) originConnection).getResponseCode();
+				if(HttpURLConnection.HTTP_OK != code){
+					throw new IOException("Origem respondeu " + code + " para '" + originConnection.getURL() + "'.");
+				}
+			}
+			InputStream is = originConnection.getInputStream();
+			byte[] buffer = new byte[128];
+			int length = 0;
+			try {
+				int bytes;
+				while(length < buffer.length && (bytes = is.read(buffer, length, buffer.length - length)) != -1){
+					length += bytes;
+				}
+			} finally {
+				is.close();
+			}
+			//formato do sha256sum: "hash  nome", apenas o hash  considerado
+			String digest = new String(buffer, 0, length, "US-ASCII").trim().split("\\s+")[0].toLowerCase();
+			if(!digest.matches("[0-9a-f]{64}")){
+				throw new IOException("Resumo invlido em '" + originConnection.getURL() + "'.");
+			}
+			return digest;
+		} finally {
+			if(originConnection instanceof HttpURLConnection){
+				((HttpURLConnection) originConnection).disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Publica ao lado do arquivo o resumo consultado por {@link #peers(String...)}, no formato do sha256sum.
+	 * Deve ser chamado na origem sempre que o arquivo for alterado.
+	 * @param file arquivo disponibilizado na origem
+	 * @return arquivo "file{@value #DIGEST_EXTENSION}" gravado
+	 * @throws IOException se algum problema ocorrer ao ler o arquivo ou gravar o resumo
+	 */
+	public static File writeDigest(File file) throws IOException {
+		if(file == null){
+			throw new IllegalArgumentException("Parameter file cannot be null.");
+		}
+		File digestFile = new File(file.getPath() + DIGEST_EXTENSION);
+		ReplacingOutputStream os = new ReplacingOutputStream(digestFile.toPath());
+		try {
+			os.write((ContentStore.hash(file.toPath()) + "  " + file.getName() + "\n").getBytes("US-ASCII"));
+			os.commit();
+		} finally {
+			os.close();
+		}
+		return digestFile;
+	}
+
 	public DownloadFile disconnect() throws IOException{
 		if(this.connected){
 			try {
@@ -160,7 +373,7 @@ public class DownloadFile {
 	 */
 	public DownloadFile download(String targetFolderPath) throws IOException{
 		if(this.connected){
-			saveFile(prepareTargetFolder(this.fileName, targetFolderPath));
+			saveOrigin(prepareTargetFolder(this.fileName, targetFolderPath));
 		}
 		return this;
 	}
@@ -179,17 +392,80 @@ public class DownloadFile {
 		return targetFilePath.replace("\\", Character.toString(File.separatorChar)).replace("/", Character.toString(File.separatorChar));
 	}
 
-	private void saveFile(String targetFilePath) throws FileNotFoundException, IOException {
-		FileOutputStream fos = new FileOutputStream(new File(targetFilePath));
-		BufferedInputStream bufferedInputStream = new BufferedInputStream(this.connection.getInputStream());
-		byte[] buffer = new byte[4096];
-		Integer bytes;
-		while((bytes = bufferedInputStream.read(buffer)) != -1){
-			fos.write(buffer, 0, bytes);
-			this.output.output(bytes);
+	private void saveOrigin(String targetFilePath) throws FileNotFoundException, IOException {
+		long lastModified = this.connection.getLastModified();
+		saveFile(targetFilePath, null);
+		if(this.peerCache != null){
+			this.peerCache.store(this.url, this.downloadedFile, lastModified);
+		}
+		adopt();
+	}
+
+	private void adopt() {
+		if(this.contentStore != null){
+			try {
+				this.contentStore.adopt(this.downloadedFile.toPath());
+			} catch (IOException e) {
+				logger.error("Problemas ao incluir '" + this.downloadedFile + "' no repositrio de contedo: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Grava o contedo por um {@link ReplacingOutputStream}: o destino s  substitudo com o download completo
+	 * e, se expectedDigest for informado, com o SHA-256 conferido.
+	 * @return false se o contedo recebido no tiver o SHA-256 esperado, o destino no  alterado
+	 */
+	private boolean saveFile(String targetFilePath, String expectedDigest) throws FileNotFoundException, IOException {
+		Span event = Events.begin(Events.DOWNLOAD);
+		long start = System.nanoTime();
+		long total = 0;
+		activeDownloads.incrementAndGet();
+		try {
+			ReplacingOutputStream fos = new ReplacingOutputStream(new File(targetFilePath).toPath());
+			try {
+				MessageDigest digest = expectedDigest == null ? null : sha256();
+				BufferedInputStream bufferedInputStream = new BufferedInputStream(this.connection.getInputStream());
+				byte[] buffer = new byte[4096];
+				Integer bytes;
+				while((bytes = bufferedInputStream.read(buffer)) != -1){
+					fos.write(buffer, 0, bytes);
+					if(digest != null){
+						digest.update(buffer, 0, bytes);
+					}
+					this.output.output(bytes);
+					total += bytes;
+				}
+				if(digest != null && !expectedDigest.equals(String.format("%064x", new BigInteger(1, digest.digest())))){
+					return false;
+				}
+				fos.commit();
+			} finally {
+				fos.close();
+			}
+		} finally {
+			activeDownloads.decrementAndGet();
+			downloadedBytes.add(total);
+			disconnect();
+		}
+		long elapsed = System.nanoTime() - start;
+		downloadedFiles.increment();
+		downloadTime.update(elapsed / 1000);
+		if(elapsed > 0){
+			downloadRate.update(total * 1000000000L / 1024 / elapsed);
+		}
+		if(event.shouldCommit()){
+			event.set("url", String.valueOf(this.url)).set("path", targetFilePath).set("bytes", total).commit();
+		}
+		return true;
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 indisponvel.", e);
 		}
-		fos.close();
-		disconnect();
 	}
 	
 	public Integer getFileLength() {
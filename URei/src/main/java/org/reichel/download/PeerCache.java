@@ -0,0 +1,103 @@
+package org.reichel.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+import org.apache.log4j.Logger;
+import org.reichel.file.ReplacingOutputStream;
+
+/**
+ * Cpia local dos arquivos baixados da origem, servida aos outros computadores da rede pelo {@link PeerCacheServer}.
+ * Cada arquivo  guardado pelo servidor e caminho da URL de origem, ex: http://svn.dominio/repo/lib/core.jar
+ * fica em "cache/svn.dominio/repo/lib/core.jar", com a data de alterao informada pela origem.
+ */
+public class PeerCache {
+
+	private static final Logger logger = Logger.getLogger(PeerCache.class);
+
+	private final Path directory;
+
+	public PeerCache(String directoryPath){
+		if(directoryPath == null){
+			throw new IllegalArgumentException("Parameter directoryPath cannot be null.");
+		}
+		this.directory = new File(directoryPath).getAbsoluteFile().toPath().normalize();
+	}
+
+	/**
+	 * @param origin URL do arquivo na origem
+	 * @return caminho relativo usado no cache e nas requisies aos outros computadores, ex: "svn.dominio/repo/lib/core.jar"
+	 */
+	public static String keyOf(URL origin){
+		String host = origin.getHost() == null || "".equals(origin.getHost()) ? "local" : origin.getHost();
+		if(origin.getPort() != -1){
+			host += "_" + origin.getPort();
+		}
+		String path;
+		try {
+			path = origin.toURI().getPath();
+		} catch (URISyntaxException e) {
+			path = origin.getPath();
+		}
+		while(path.startsWith("/")){
+			path = path.substring(1);
+		}
+		return host + "/" + path;
+	}
+
+	/**
+	 * @param key caminho relativo ao cache
+	 * @return arquivo no cache, ou null se o caminho sair do diretrio do cache ou o arquivo no existir
+	 */
+	File get(String key){
+		Path path = resolve(key);
+		return path != null && Files.isRegularFile(path) ? path.toFile() : null;
+	}
+
+	/**
+	 * Guarda uma cpia do arquivo baixado. Falhas so apenas registradas, o cache  opcional.
+	 * @param origin URL do arquivo na origem
+	 * @param file arquivo baixado
+	 * @param lastModified data de alterao informada pela origem em milisegundos, zero se desconhecida
+	 */
+	public void store(URL origin, File file, long lastModified){
+		Path target = resolve(keyOf(origin));
+		if(target == null){
+			return;
+		}
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		try {
+			Files.createDirectories(target.getParent());
+			Files.copy(file.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+			if(lastModified > 0){
+				Files.setLastModifiedTime(temp, FileTime.fromMillis(lastModified));
+			}
+			ReplacingOutputStream.replace(temp, target);
+		} catch (IOException e) {
+			logger.error("Problemas ao guardar '" + origin + "' no cache: " + e.getMessage());
+			try {
+				Files.deleteIfExists(temp);
+			} catch (IOException ex) {
+				logger.error("Problemas ao liberar recursos: " + ex.getMessage());
+			}
+		}
+	}
+
+	private Path resolve(String key) {
+		while(key.startsWith("/")){
+			key = key.substring(1);
+		}
+		Path path = this.directory.resolve(key).normalize();
+		return path.startsWith(this.directory) && !path.equals(this.directory) ? path : null;
+	}
+
+	public File getDirectory() {
+		return directory.toFile();
+	}
+}
@@ -0,0 +1,168 @@
+package org.reichel.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.reichel.metrics.Counter;
+import org.reichel.metrics.MetricsRegistry;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Servidor HTTP opcional que disponibiliza o contedo de um {@link PeerCache} aos outros computadores da rede local,
+ * evitando que o mesmo arquivo atravesse o link com a origem uma vez por computador.
+ * Responde apenas GET e HEAD em "/{@link PeerCache#keyOf(java.net.URL) chave}". O contedo servido no  confivel:
+ * o {@link DownloadFile} confere o SHA-256 recebido com o publicado pela origem antes de us-lo.
+ * exemplo:
+ * <pre>
+ * PeerCache cache = new PeerCache("c:\\urei\\cache");
+ * PeerCacheServer server = new PeerCacheServer(cache).start(8765);
+ * new DownloadFile(output, "http://svn.dominio/repo")
+ *     .peers("http://estacao2:8765", "http://estacao3:8765")
+ *     .peerCache(cache)
+ *     .download("lib/core.jar", "c:\\sistema");
+ * </pre>
+ */
+public class PeerCacheServer {
+
+	private static final Logger logger = Logger.getLogger(PeerCacheServer.class);
+
+	private static final Counter servedFiles = MetricsRegistry.getDefault().counter("peer.served");
+
+	private static final Counter servedBytes = MetricsRegistry.getDefault().counter("peer.served.bytes");
+
+	private static final Counter missedFiles = MetricsRegistry.getDefault().counter("peer.missed");
+
+	private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+	private final PeerCache cache;
+
+	private int threads = 4;
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	public PeerCacheServer(PeerCache cache){
+		if(cache == null){
+			throw new IllegalArgumentException("Parameter cache cannot be null.");
+		}
+		this.cache = cache;
+	}
+
+	public PeerCacheServer threads(int threads){
+		if(threads < 1){
+			throw new IllegalArgumentException("Parameter threads must be greater than zero.");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * @param port porta em todas as interfaces, zero para uma porta livre (ver {@link #getPort()})
+	 */
+	public PeerCacheServer start(int port) throws IOException{
+		return start(new InetSocketAddress(port));
+	}
+
+	public synchronized PeerCacheServer start(InetSocketAddress address) throws IOException{
+		if(address == null){
+			throw new IllegalArgumentException("Parameter address cannot be null.");
+		}
+		if(this.server != null){
+			throw new IllegalStateException("Servidor j iniciado na porta " + getPort() + ".");
+		}
+		HttpServer server = HttpServer.create(address, 0);
+		server.createContext("/", new CacheHandler());
+		this.executor = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "peer-cache-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(this.executor);
+		server.start();
+		this.server = server;
+		logger.info("Cache disponvel para a rede em " + server.getAddress() + ": " + this.cache.getDirectory());
+		return this;
+	}
+
+	public synchronized void stop(){
+		if(this.server != null){
+			this.server.stop(0);
+			this.executor.shutdownNow();
+			this.server = null;
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * @return porta em uso ou -1 se o servidor no estiver iniciado
+	 */
+	public synchronized int getPort(){
+		return this.server == null ? -1 : this.server.getAddress().getPort();
+	}
+
+	public PeerCache getCache() {
+		return cache;
+	}
+
+	private class CacheHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				String method = exchange.getRequestMethod();
+				boolean head = "HEAD".equals(method);
+				if(!head && !"GET".equals(method)){
+					exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+				File file = cache.get(exchange.getRequestURI().getPath());
+				if(file == null){
+					missedFiles.increment();
+					exchange.sendResponseHeaders(404, -1);
+					return;
+				}
+				long length = file.length();
+				exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+				exchange.getResponseHeaders().set("Last-Modified", HTTP_DATE.format(Instant.ofEpochMilli(file.lastModified())));
+				if(head){
+					exchange.getResponseHeaders().set("Content-Length", Long.toString(length));
+					exchange.sendResponseHeaders(200, -1);
+					return;
+				}
+				exchange.sendResponseHeaders(200, length == 0 ? -1 : length);
+				OutputStream os = exchange.getResponseBody();
+				try {
+					Files.copy(file.toPath(), os);
+				} finally {
+					os.close();
+				}
+				servedFiles.increment();
+				servedBytes.add(length);
+			} catch (IOException e) {
+				logger.error("Problemas ao enviar '" + exchange.getRequestURI() + "' para " + exchange.getRemoteAddress() + ": " + e.getMessage());
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,452 @@
+package org.reichel.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.reichel.metrics.Counter;
+import org.reichel.metrics.MetricsRegistry;
+
+/**
+ * Repositrio local de arquivos indexados pelo SHA-256 do contedo, compartilhado entre diretrios de instalao
+ * (trunk, bd_testes, branches...). Um arquivo cujo contedo j est no repositrio  instalado como link fsico
+ * (hard link) para o objeto existente, sem gravar novamente os bytes, de forma que jars e classes idnticos
+ * ocupam o disco uma nica vez. Quando links fsicos no so suportados, ex: repositrio em outro volume,
+ * o objeto  copiado.
+ * Arquivos instalados por link compartilham o contedo com o repositrio e com os outros diretrios, por isso
+ * devem ser substitudos e nunca alterados no lugar; {@link #link(String, Path)} sempre substitui o destino.
+ * Os objetos so somente leitura e conferidos antes de serem reaproveitados, e os arquivos de origem nunca so
+ * ligados ao repositrio: o contedo  sempre copiado para um objeto prprio.
+ * Exemplo de utilizao:
+ * <pre>
+ *   ContentStore store = new ContentStore("c:\\unimed\\store");
+ *   new JarUtils().contentStore(store).extractFiles("c:\\temp\\config.jar", "c:\\unimed\\trunk\\config");
+ *   new JarUtils().contentStore(store).extractFiles("c:\\temp\\config.jar", "c:\\unimed\\bd_testes\\config");
+ * </pre>
+ */
+public class ContentStore {
+
+	private static final Logger logger = Logger.getLogger(ContentStore.class);
+
+	private static final Counter storedObjects = MetricsRegistry.getDefault().counter("store.objects");
+
+	private static final Counter linkedFiles = MetricsRegistry.getDefault().counter("store.links");
+
+	private static final Counter savedBytes = MetricsRegistry.getDefault().counter("store.bytes.saved");
+
+	/** Contedos at este tamanho so calculados em memria, sem arquivo temporrio. */
+	private static final int MEMORY_LIMIT = 1024 * 1024;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Path directory;
+
+	private final AtomicBoolean copyWarned = new AtomicBoolean(false);
+
+	public ContentStore(String directoryPath){
+		if(directoryPath == null){
+			throw new IllegalArgumentException("Parameter directoryPath cannot be null.");
+		}
+		this.directory = new File(directoryPath).getAbsoluteFile().toPath().normalize();
+	}
+
+	/**
+	 * @param hash SHA-256 em hexadecimal
+	 * @return true se o contedo estiver no repositrio
+	 */
+	public boolean contains(String hash){
+		return Files.isRegularFile(object(hash));
+	}
+
+	/**
+	 * Grava o contedo do stream no destino. Se o contedo j estiver no repositrio nenhum byte  gravado,
+	 * o destino passa a ser um link para o objeto existente.
+	 * @param is contedo, no  fechado
+	 * @param target arquivo de destino, substitudo se existir
+	 * @return SHA-256 do contedo
+	 */
+	public String write(InputStream is, Path target) throws IOException {
+		if(target == null){
+			throw new IllegalArgumentException("Parameter target cannot be null.");
+		}
+		Content content = read(is);
+		try {
+			return store(content, target);
+		} finally {
+			content.delete();
+		}
+	}
+
+	/**
+	 * Inclui uma cpia do arquivo no repositrio, sem alter-lo. O arquivo continua independente do objeto,
+	 * alteraes posteriores nele no afetam o repositrio.
+	 * @return SHA-256 do contedo
+	 */
+	public String add(Path file) throws IOException {
+		return put(file, null);
+	}
+
+	/**
+	 * Inclui um arquivo no repositrio e o substitui por um link para o objeto, liberando o espao da cpia
+	 * quando o contedo j existia. Usado aps um download.
+	 * @return SHA-256 do contedo
+	 */
+	public String adopt(Path file) throws IOException {
+		return put(file, file);
+	}
+
+	/**
+	 * Instala o contedo de um arquivo em outro caminho atravs do repositrio, ex: cpia de uma verso para outra.
+	 * A origem no  alterada nem ligada ao repositrio.
+	 * @return SHA-256 do contedo
+	 */
+	public String install(Path source, Path target) throws IOException {
+		if(target == null){
+			throw new IllegalArgumentException("Parameter target cannot be null.");
+		}
+		return put(source, target);
+	}
+
+	/**
+	 * Substitui o destino por um link para o objeto, nunca gravando atravs de um link existente.
+	 * @param hash SHA-256 de um contedo do repositrio
+	 * @param target arquivo de destino
+	 * @throws IOException se o objeto no existir ou no tiver mais o contedo do hash
+	 */
+	public void link(String hash, Path target) throws IOException {
+		Path object = object(hash);
+		if(!intact(object, hash, -1)){
+			throw new IOException("Contedo '" + hash + "' no encontrado no repositrio '" + this.directory + "'.");
+		}
+		link(object, target);
+	}
+
+	/**
+	 * Remove os objetos que no so mais usados por nenhum diretrio, ou seja, com um nico link.
+	 * Pode ser executado junto com gravaes: um objeto novo j nasce ligado ao destino e um objeto removido
+	 * entre a consulta e o link  publicado novamente por quem o usaria.
+	 * @return objetos removidos ou -1 se o sistema de arquivos no informa a quantidade de links
+	 */
+	public int prune() throws IOException {
+		if(!Files.isDirectory(this.directory)){
+			return 0;
+		}
+		int removed = 0;
+		DirectoryStream<Path> prefixes = Files.newDirectoryStream(this.directory);
+		try {
+			for(Path prefix : prefixes){
+				if(!Files.isDirectory(prefix)){
+					continue;
+				}
+				DirectoryStream<Path> objects = Files.newDirectoryStream(prefix);
+				try {
+					for(Path object : objects){
+						int links;
+						try {
+							links = ((Number) Files.getAttribute(object, "unix:nlink")).intValue();
+						} catch (UnsupportedOperationException e) {
+							return -1;
+						} catch (IllegalArgumentException e) {
+							return -1;
+						}
+						if(links == 1 && Files.deleteIfExists(object)){
+							removed++;
+						}
+					}
+				} finally {
+					objects.close();
+				}
+			}
+		} finally {
+			prefixes.close();
+		}
+		return removed;
+	}
+
+	public File getDirectory() {
+		return directory.toFile();
+	}
+
+	/**
+	 * L o contedo calculando o SHA-256, em memria at {@link #MEMORY_LIMIT} e em arquivo temporrio acima disso.
+	 */
+	private Content read(InputStream is) throws IOException {
+		MessageDigest digest = sha256();
+		ByteArrayOutputStream memory = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int bytes;
+		while(memory.size() <= MEMORY_LIMIT && (bytes = is.read(buffer)) != -1){
+			digest.update(buffer, 0, bytes);
+			memory.write(buffer, 0, bytes);
+		}
+		if(memory.size() <= MEMORY_LIMIT){
+			return new Content(hex(digest.digest()), memory.size(), memory.toByteArray(), null);
+		}
+		Path temp = temporary();
+		try {
+			long size = memory.size();
+			OutputStream os = Files.newOutputStream(temp);
+			try {
+				memory.writeTo(os);
+				while((bytes = is.read(buffer)) != -1){
+					digest.update(buffer, 0, bytes);
+					os.write(buffer, 0, bytes);
+					size += bytes;
+				}
+			} finally {
+				os.close();
+			}
+			return new Content(hex(digest.digest()), size, null, temp);
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+
+	/**
+	 * S copia o arquivo quando o contedo ainda no est no repositrio; o arquivo  fechado antes de o
+	 * destino, que pode ser o prprio arquivo, ser substitudo.
+	 */
+	private String put(Path file, Path target) throws IOException {
+		String hash = hash(file);
+		Path object = object(hash);
+		if(target == null ? intact(object, hash, Files.size(file)) : reuse(object, hash, Files.size(file), target)){
+			return hash;
+		}
+		Content content;
+		InputStream is = Files.newInputStream(file);
+		try {
+			content = read(is);
+		} finally {
+			is.close();
+		}
+		try {
+			return store(content, target);
+		} finally {
+			content.delete();
+		}
+	}
+
+	private String store(Content content, Path target) throws IOException {
+		Path object = object(content.hash);
+		if(target == null ? intact(object, content.hash, content.size) : reuse(object, content.hash, content.size, target)){
+			return content.hash;
+		}
+		Path temp = content.temp;
+		if(temp == null){
+			temp = temporary();
+			content.temp = temp;
+			Files.write(temp, content.memory);
+		}
+		publish(temp, object, target);
+		return content.hash;
+	}
+
+	/**
+	 * Liga o destino a um objeto existente.
+	 * @return false se o objeto no existir, tiver sido alterado ou for removido por {@link #prune()} antes do link
+	 */
+	private boolean reuse(Path object, String hash, long size, Path target) throws IOException {
+		if(!intact(object, hash, size)){
+			return false;
+		}
+		try {
+			link(object, target);
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		savedBytes.add(size);
+		return true;
+	}
+
+	/**
+	 * Confere o contedo do objeto antes de reaproveit-lo. Um objeto alterado no lugar  descartado e
+	 * publicado novamente por quem tiver o contedo correto.
+	 * @param size tamanho esperado ou -1 para conferir apenas o SHA-256
+	 */
+	private boolean intact(Path object, String hash, long size) throws IOException {
+		if(!Files.isRegularFile(object)){
+			return false;
+		}
+		try {
+			if((size < 0 || Files.size(object) == size) && hash.equals(hash(object))){
+				return true;
+			}
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		logger.warn("Objeto '" + object + "' alterado fora do repositrio, ser substitudo.");
+		return false;
+	}
+
+	private void link(Path object, Path target) throws IOException {
+		Path temp = stage(object, target);
+		try {
+			ReplacingOutputStream.replace(temp, target);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		linkedFiles.increment();
+	}
+
+	/**
+	 * Cria ao lado do destino um link (ou cpia) para o arquivo, ainda sem substituir o destino.
+	 */
+	private Path stage(Path file, Path target) throws IOException {
+		Path parent = target.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temp = parent.resolve(target.getFileName() + ".link");
+		Files.deleteIfExists(temp);
+		try {
+			Files.createLink(temp, file);
+		} catch (NoSuchFileException e) {
+			throw e;
+		} catch (IOException e) {
+			copyInstead(file, temp, e.getMessage());
+		} catch (UnsupportedOperationException e) {
+			copyInstead(file, temp, e.getMessage());
+		}
+		return temp;
+	}
+
+	private void copyInstead(Path object, Path temp, String reason) throws IOException {
+		if(!this.copyWarned.getAndSet(true)){
+			logger.warn("Links fsicos indisponveis em '" + temp.getParent() + "', os arquivos sero copiados do repositrio: " + reason);
+		}
+		Files.copy(object, temp, StandardCopyOption.REPLACE_EXISTING);
+		//a cpia no  compartilhada com o repositrio e pode ser alterada
+		temp.toFile().setWritable(true);
+	}
+
+	/**
+	 * Move o arquivo temporrio para o objeto, somente leitura. Com destino, o link do destino  criado antes,
+	 * de forma que {@link #prune()} nunca encontra o objeto novo com um nico link.
+	 * Contedos iguais tm o mesmo nome, se outra thread publicou o objeto antes a substituio no altera o contedo.
+	 */
+	private void publish(Path temp, Path object, Path target) throws IOException {
+		readOnly(temp);
+		Path staged = target == null ? null : stage(temp, target);
+		try {
+			Files.createDirectories(object.getParent());
+			ReplacingOutputStream.replace(temp, object);
+			storedObjects.increment();
+			if(staged != null){
+				ReplacingOutputStream.replace(staged, target);
+				linkedFiles.increment();
+			}
+		} finally {
+			if(staged != null){
+				Files.deleteIfExists(staged);
+			}
+		}
+	}
+
+	/**
+	 * Remove a permisso de escrita onde h permisses POSIX, para que uma gravao no lugar atravs de um
+	 * destino ligado falhe em vez de alterar o objeto. No usa o atributo somente leitura do Windows, que
+	 * impediria a substituio dos destinos.
+	 */
+	private static void readOnly(Path file) {
+		PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+		if(view == null){
+			return;
+		}
+		try {
+			Set<PosixFilePermission> permissions = view.readAttributes().permissions();
+			permissions.remove(PosixFilePermission.OWNER_WRITE);
+			permissions.remove(PosixFilePermission.GROUP_WRITE);
+			permissions.remove(PosixFilePermission.OTHERS_WRITE);
+			view.setPermissions(permissions);
+		} catch (IOException e) {
+			logger.warn("No foi possvel tornar '" + file + "' somente leitura: " + e.getMessage());
+		}
+	}
+
+	private Path temporary() throws IOException {
+		Files.createDirectories(this.directory);
+		return Files.createTempFile(this.directory, "object", ".tmp");
+	}
+
+	private Path object(String hash){
+		if(hash == null || hash.length() != 64){
+			throw new IllegalArgumentException("Parameter hash must be a SHA-256 hexadecimal string.");
+		}
+		return this.directory.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+	}
+
+	/**
+	 * @return SHA-256 do contedo do arquivo em hexadecimal
+	 */
+	public static String hash(Path file) throws IOException {
+		MessageDigest digest = sha256();
+		InputStream is = Files.newInputStream(file);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int bytes;
+			while((bytes = is.read(buffer)) != -1){
+				digest.update(buffer, 0, bytes);
+			}
+		} finally {
+			is.close();
+		}
+		return hex(digest.digest());
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 indisponvel.", e);
+		}
+	}
+
+	private static String hex(byte[] bytes){
+		char[] chars = new char[bytes.length * 2];
+		for(int i = 0; i < bytes.length; i++){
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Contedo lido com o SHA-256 calculado, em memria ou em arquivo temporrio.
+	 */
+	private static final class Content {
+
+		private final String hash;
+
+		private final long size;
+
+		private final byte[] memory;
+
+		private Path temp;
+
+		Content(String hash, long size, byte[] memory, Path temp) {
+			this.hash = hash;
+			this.size = size;
+			this.memory = memory;
+			this.temp = temp;
+		}
+
+		void delete() throws IOException {
+			if(this.temp != null){
+				Files.deleteIfExists(this.temp);
+			}
+		}
+	}
+}
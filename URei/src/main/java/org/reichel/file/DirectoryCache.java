@@ -0,0 +1,300 @@
+package org.reichel.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Cache em disco das listagens de diretrio usadas por {@link FindFiles}.
+ * Cada listagem guarda o nome e o tipo (arquivo ou diretrio) das entradas e a data de alterao do diretrio.
+ * Em uma nova busca o diretrio s  relido se a data de alterao mudou, caso contrrio a listagem em cache
+ *  usada sem ler o diretrio nem os atributos das entradas.
+ * A data de alterao de um diretrio muda quando entradas so criadas, removidas ou renomeadas, mas no
+ * quando o contedo de um arquivo  alterado, por isso o filtro {@link FindFiles#modifiedAfter(Long)} continua
+ * lendo a data de cada arquivo que atende aos padres da busca.
+ * Exemplo de utilizao:
+ * <pre>
+ *   DirectoryCache cache = DirectoryCache.open("cache/workspace.dircache");
+ *   FindFiles findFiles = new FindFiles().cache(cache);
+ *   List&lt;File&gt; jars = findFiles.findFiles("c:\\unimed\\workspace", ".jar");
+ *   logger.info(findFiles.getCacheReport());
+ *   cache.save();
+ * </pre>
+ */
+public class DirectoryCache {
+
+	private static final Logger logger = Logger.getLogger(DirectoryCache.class);
+
+	private static final int MAGIC = 0x55524443;
+
+	private static final int VERSION = 2;
+
+	/**
+	 * Listagens feitas at este intervalo depois da alterao do diretrio no so reaproveitadas,
+	 * pois uma nova alterao dentro da preciso da data do sistema de arquivos no seria percebida.
+	 */
+	private static final long RACY_INTERVAL = 2000L;
+
+	static final byte FILE = 0;
+
+	static final byte DIRECTORY = 1;
+
+	static final byte OTHER = 2;
+
+	/**
+	 * Link simblico ou juno para um diretrio.
+	 */
+	static final byte DIRECTORY_LINK = 3;
+
+	private final File cacheFile;
+
+	private final ConcurrentMap<String, Listing> listings = new ConcurrentHashMap<String, Listing>();
+
+	private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+	private final Object saveLock = new Object();
+
+	/**
+	 * @param cacheFilePath arquivo onde o cache  gravado, criado no primeiro {@link #save()}
+	 */
+	public DirectoryCache(String cacheFilePath){
+		if(cacheFilePath == null){
+			throw new IllegalArgumentException("Parameter cacheFilePath cannot be null.");
+		}
+		this.cacheFile = new File(cacheFilePath);
+	}
+
+	/**
+	 * Cria o cache carregando as listagens gravadas anteriormente. Um arquivo inexistente ou invlido resulta em cache vazio.
+	 * @param cacheFilePath arquivo onde o cache  gravado
+	 * @return cache carregado
+	 */
+	public static DirectoryCache open(String cacheFilePath){
+		DirectoryCache cache = new DirectoryCache(cacheFilePath);
+		cache.load();
+		return cache;
+	}
+
+	/**
+	 * Retorna a listagem do diretrio, relendo-o apenas se foi alterado desde a ltima listagem.
+	 */
+	Listing list(Path directory, DirectoryCacheReport report) throws IOException {
+		String key = directory.toAbsolutePath().normalize().toString();
+		long modified;
+		try {
+			modified = Files.getLastModifiedTime(directory).toMillis();
+		} catch (NoSuchFileException e) {
+			if(this.listings.remove(key) != null){
+				this.dirty.set(true);
+			}
+			throw e;
+		}
+		Listing cached = this.listings.get(key);
+		if(cached != null && cached.modified == modified && cached.listed - modified > RACY_INTERVAL){
+			report.hit(cached.size());
+			return cached;
+		}
+		Listing listing = read(directory, modified);
+		this.listings.put(key, listing);
+		this.dirty.set(true);
+		report.miss(listing.size());
+		return listing;
+	}
+
+	/**
+	 * Links simblicos so seguidos, assim como em File.isFile() e File.isDirectory().
+	 */
+	private Listing read(Path directory, long modified) throws IOException {
+		long listed = System.currentTimeMillis();
+		List<String> names = new ArrayList<String>();
+		List<Byte> kinds = new ArrayList<Byte>();
+		DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+		try {
+			for(Path entry : stream){
+				byte kind = OTHER;
+				BasicFileAttributes attrs = FindCriteria.readAttributes(entry);
+				BasicFileAttributes target = attrs == null ? null : FindCriteria.follow(entry, attrs);
+				//entrada inacessvel ou link quebrado fica como OTHER, ignorada pelas buscas
+				if(target != null){
+					kind = target.isDirectory() ? FindCriteria.isLink(attrs) ? DIRECTORY_LINK : DIRECTORY : target.isRegularFile() ? FILE : OTHER;
+				}
+				names.add(entry.getFileName().toString());
+				kinds.add(kind);
+			}
+		} catch (DirectoryIteratorException e) {
+			throw e.getCause();
+		} finally {
+			stream.close();
+		}
+		byte[] kindArray = new byte[kinds.size()];
+		for(int i = 0; i < kindArray.length; i++){
+			kindArray[i] = kinds.get(i);
+		}
+		return new Listing(modified, listed, names.toArray(new String[names.size()]), kindArray);
+	}
+
+	private void load() {
+		if(!this.cacheFile.isFile()){
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.cacheFile), 64 * 1024));
+			if(in.readInt() != MAGIC || in.readInt() != VERSION){
+				logger.warn("Cache de diretrios '" + this.cacheFile.getAbsolutePath() + "' em formato desconhecido, ser recriado.");
+				return;
+			}
+			int count = in.readInt();
+			for(int i = 0; i < count; i++){
+				String key = in.readUTF();
+				long modified = in.readLong();
+				long listed = in.readLong();
+				int size = in.readInt();
+				String[] names = new String[size];
+				byte[] kinds = new byte[size];
+				for(int j = 0; j < size; j++){
+					names[j] = in.readUTF();
+					kinds[j] = in.readByte();
+				}
+				this.listings.put(key, new Listing(modified, listed, names, kinds));
+			}
+		} catch (IOException e) {
+			logger.warn("No foi possvel carregar o cache de diretrios '" + this.cacheFile.getAbsolutePath() + "', ser recriado. " + e.getClass().getName() + ":" + e.getMessage());
+			this.listings.clear();
+		} finally {
+			if(in != null){
+				try {
+					in.close();
+				} catch (IOException e) {
+					logger.error("Problemas ao liberar recursos: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Grava o cache caso alguma listagem tenha mudado. A gravao  feita em um arquivo temporrio
+	 * que substitui o anterior, uma falha no meio da gravao no corrompe o cache existente.
+	 */
+	public void save(){
+		if(!this.dirty.getAndSet(false)){
+			return;
+		}
+		synchronized (this.saveLock) {
+			File parent = this.cacheFile.getAbsoluteFile().getParentFile();
+			if(parent != null && !parent.exists()){
+				parent.mkdirs();
+			}
+			File temp = new File(parent, this.cacheFile.getName() + ".tmp");
+			DataOutputStream out = null;
+			try {
+				List<Entry<String, Listing>> entries = new ArrayList<Entry<String, Listing>>(this.listings.entrySet());
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(entries.size());
+				for(Entry<String, Listing> entry : entries){
+					Listing listing = entry.getValue();
+					out.writeUTF(entry.getKey());
+					out.writeLong(listing.modified);
+					out.writeLong(listing.listed);
+					out.writeInt(listing.size());
+					for(int i = 0; i < listing.size(); i++){
+						out.writeUTF(listing.names[i]);
+						out.writeByte(listing.kinds[i]);
+					}
+				}
+				out.close();
+				out = null;
+				ReplacingOutputStream.replace(temp.toPath(), this.cacheFile.toPath());
+			} catch (IOException e) {
+				this.dirty.set(true);
+				logger.error("Erro ao salvar cache de diretrios '" + this.cacheFile.getAbsolutePath() + "'. " + e.getClass().getName() + ":" + e.getMessage());
+				if(out != null){
+					try {
+						out.close();
+					} catch (IOException ex) {
+						logger.error("Problemas ao liberar recursos: " + ex.getMessage());
+					}
+				}
+				temp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Descarta todas as listagens, a prxima busca rel todos os diretrios.
+	 */
+	public void clear(){
+		this.listings.clear();
+		this.dirty.set(true);
+	}
+
+	public int size(){
+		return this.listings.size();
+	}
+
+	public File getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 * Listagem imutvel de um diretrio, na mesma ordem da leitura do sistema de arquivos.
+	 */
+	static class Listing {
+
+		private final long modified;
+
+		private final long listed;
+
+		private final String[] names;
+
+		private final byte[] kinds;
+
+		Listing(long modified, long listed, String[] names, byte[] kinds) {
+			this.modified = modified;
+			this.listed = listed;
+			this.names = names;
+			this.kinds = kinds;
+		}
+
+		int size(){
+			return this.names.length;
+		}
+
+		String getName(int index){
+			return this.names[index];
+		}
+
+		boolean isDirectory(int index){
+			return this.kinds[index] == DIRECTORY || this.kinds[index] == DIRECTORY_LINK;
+		}
+
+		boolean isLink(int index){
+			return this.kinds[index] == DIRECTORY_LINK;
+		}
+
+		boolean isFile(int index){
+			return this.kinds[index] == FILE;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.reichel.file;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contadores de uso do {@link DirectoryCache} em uma busca, atualizados pelas tarefas paralelas de {@link FindFiles}.
+ * Um acerto  um diretrio cuja listagem veio do cache, sem leitura do diretrio nem dos atributos das entradas.
+ * @see FindFiles#getCacheReport()
+ */
+public class DirectoryCacheReport {
+
+	private final AtomicInteger hits = new AtomicInteger();
+
+	private final AtomicInteger misses = new AtomicInteger();
+
+	private final AtomicLong cachedEntries = new AtomicLong();
+
+	private final AtomicLong listedEntries = new AtomicLong();
+
+	void hit(int entries){
+		this.hits.incrementAndGet();
+		this.cachedEntries.addAndGet(entries);
+	}
+
+	void miss(int entries){
+		this.misses.incrementAndGet();
+		this.listedEntries.addAndGet(entries);
+	}
+
+	/**
+	 * @return diretrios cuja listagem veio do cache
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return diretrios novos ou alterados que foram relidos
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return entradas reaproveitadas do cache, cada uma  uma leitura de atributos evitada
+	 */
+	public long getCachedEntries() {
+		return cachedEntries.get();
+	}
+
+	/**
+	 * @return entradas lidas do sistema de arquivos
+	 */
+	public long getListedEntries() {
+		return listedEntries.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Diretrios em cache: " + getHits() + ", relidos: " + getMisses()
+				+ ", entradas reaproveitadas: " + getCachedEntries() + ", entradas lidas: " + getListedEntries();
+	}
+}
@@ -0,0 +1,217 @@
+package org.reichel.file;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Regras de excluso no estilo .gitignore, compiladas uma nica vez e usadas para podar sub-rvores
+ * inteiras antes de entrar nelas.
+ * <ul>
+ * <li>"target", ".svn", "*.tmp": sem '/', comparadas com o nome em qualquer nvel;</li>
+ * <li>"node_modules/": '/' no final, apenas diretrios;</li>
+ * <li>"/dist", "config/local": '/' no incio ou no meio, comparadas com o caminho relativo  raiz;</li>
+ * <li>"**", "*", "?", "[abc]", "{a,b}": globs;</li>
+ * <li>"!regra": inclui novamente o que uma regra anterior excluiu, vale a ltima regra que atender;</li>
+ * <li>linhas em branco e iniciadas por '#' so ignoradas.</li>
+ * </ul>
+ * Exemplo de utilizao:
+ * <pre>
+ *   ExclusionMatcher exclusions = new ExclusionMatcher(true, ".svn/", "target/", "node_modules/");
+ *   List&lt;File&gt; jars = new FindFiles().exclude(exclusions).findFiles("c:\\unimed\\workspace", ".jar");
+ * </pre>
+ */
+public class ExclusionMatcher {
+
+	public static final ExclusionMatcher NONE = new ExclusionMatcher(false);
+
+	private final boolean ignoreCase;
+
+	private final List<Rule> rules = new ArrayList<Rule>();
+
+	private final boolean hasAnchored;
+
+	/** Nomes sem glob e sem negao, testados com uma nica busca em HashSet. */
+	private final Set<String> names = new HashSet<String>();
+
+	private final Set<String> directoryNames = new HashSet<String>();
+
+	public ExclusionMatcher(boolean ignoreCase, String... rules){
+		this.ignoreCase = ignoreCase;
+		boolean hasNegation = false;
+		if(rules != null){
+			for(String rule : rules){
+				if(rule != null){
+					hasNegation |= rule.trim().startsWith("!");
+				}
+			}
+			for(String rule : rules){
+				addRule(rule, hasNegation);
+			}
+		}
+		this.hasAnchored = hasAnchored(this.rules);
+	}
+
+	private ExclusionMatcher(boolean ignoreCase, List<Rule> rules){
+		this.ignoreCase = ignoreCase;
+		this.rules.addAll(rules);
+		this.hasAnchored = hasAnchored(this.rules);
+	}
+
+	private static boolean hasAnchored(List<Rule> rules) {
+		for(Rule rule : rules){
+			if(rule.anchored){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compatibilidade com as excees de {@link org.reichel.jar.JarUtils}: exclui os diretrios cujo
+	 * caminho termine com algum dos textos informados.
+	 * @param suffixes finais de caminho de diretrio, ex: "target" ou "lib\\ext"
+	 * @return regras equivalentes
+	 */
+	public static ExclusionMatcher fromSuffixes(String... suffixes){
+		List<Rule> rules = new ArrayList<Rule>();
+		if(suffixes != null){
+			for(String suffix : suffixes){
+				if(suffix != null && !"".equals(suffix)){
+					String normalized = suffix.replace('\\', '/');
+					rules.add(new Rule(Pattern.compile("(?:.*/)?[^/]*" + Pattern.quote(normalized)), false, true, normalized.indexOf('/') != -1));
+				}
+			}
+		}
+		return new ExclusionMatcher(false, rules);
+	}
+
+	private void addRule(String rule, boolean hasNegation) {
+		if(rule == null){
+			return;
+		}
+		rule = rule.trim().replace('\\', '/');
+		if("".equals(rule) || rule.startsWith("#")){
+			return;
+		}
+		boolean negate = rule.startsWith("!");
+		if(negate){
+			rule = rule.substring(1);
+		}
+		boolean directoryOnly = rule.endsWith("/");
+		while(rule.endsWith("/")){
+			rule = rule.substring(0, rule.length() - 1);
+		}
+		boolean anchored = rule.indexOf('/') != -1;
+		while(rule.startsWith("/")){
+			rule = rule.substring(1);
+		}
+		if("".equals(rule)){
+			return;
+		}
+		if(!hasNegation && !anchored && !Globs.isGlob(rule)){
+			(directoryOnly ? this.directoryNames : this.names).add(normalizeCase(rule));
+			return;
+		}
+		int flags = this.ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+		this.rules.add(new Rule(Pattern.compile(Globs.toRegex(rule), flags), negate, directoryOnly, anchored));
+	}
+
+	/**
+	 * @param relativePath caminho relativo  raiz, com '/' ou o separador do sistema
+	 * @param directory se o caminho  um diretrio
+	 * @return true se o caminho deve ser ignorado
+	 */
+	public boolean isExcluded(String relativePath, boolean directory){
+		if(isEmpty() || relativePath == null || "".equals(relativePath)){
+			return false;
+		}
+		if(File.separatorChar != '/'){
+			relativePath = relativePath.replace(File.separatorChar, '/');
+		}
+		return isExcluded(relativePath.substring(relativePath.lastIndexOf('/') + 1), relativePath, directory);
+	}
+
+	/**
+	 * @param root raiz da busca
+	 * @param path caminho dentro da raiz
+	 * @param directory se o caminho  um diretrio
+	 * @return true se o caminho deve ser ignorado
+	 */
+	public boolean isExcluded(Path root, Path path, boolean directory){
+		if(isEmpty()){
+			return false;
+		}
+		Path fileName = path.getFileName();
+		if(fileName == null){
+			return false;
+		}
+		String name = fileName.toString();
+		String relativePath = null;
+		if(this.hasAnchored){
+			relativePath = root.relativize(path).toString();
+			if(File.separatorChar != '/'){
+				relativePath = relativePath.replace(File.separatorChar, '/');
+			}
+		}
+		return isExcluded(name, relativePath, directory);
+	}
+
+	private boolean isExcluded(String name, String relativePath, boolean directory) {
+		if(!this.names.isEmpty() || !this.directoryNames.isEmpty()){
+			String key = normalizeCase(name);
+			if(this.names.contains(key) || (directory && this.directoryNames.contains(key))){
+				return true;
+			}
+		}
+		for(int i = this.rules.size() - 1; i >= 0; i--){
+			Rule rule = this.rules.get(i);
+			if(rule.matches(name, relativePath, directory)){
+				return !rule.negate;
+			}
+		}
+		return false;
+	}
+
+	private String normalizeCase(String name) {
+		return this.ignoreCase ? name.toLowerCase(Locale.ENGLISH) : name;
+	}
+
+	public boolean isEmpty(){
+		return this.rules.isEmpty() && this.names.isEmpty() && this.directoryNames.isEmpty();
+	}
+
+	public boolean isIgnoreCase() {
+		return ignoreCase;
+	}
+
+	private static class Rule {
+
+		private final Pattern pattern;
+
+		private final boolean negate;
+
+		private final boolean directoryOnly;
+
+		private final boolean anchored;
+
+		Rule(Pattern pattern, boolean negate, boolean directoryOnly, boolean anchored) {
+			this.pattern = pattern;
+			this.negate = negate;
+			this.directoryOnly = directoryOnly;
+			this.anchored = anchored;
+		}
+
+		boolean matches(String name, String relativePath, boolean directory){
+			if(this.directoryOnly && !directory){
+				return false;
+			}
+			return this.pattern.matcher(this.anchored ? relativePath : name).matches();
+		}
+	}
+}
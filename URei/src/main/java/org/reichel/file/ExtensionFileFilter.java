@@ -21,11 +21,8 @@ public class ExtensionFileFilter implements FileFilter {
 	@Override
 	public boolean accept(File pathname) {
 		if(pathname != null && pathname.isFile()){
-			String absolutePath = pathname.getAbsolutePath();
-			if(this.ignoreCase){
-				absolutePath = absolutePath.toLowerCase();
-			}
-			return (absolutePath.endsWith(extension.toLowerCase()));
+			String path = this.extension.indexOf('/') == -1 && this.extension.indexOf('\\') == -1 ? pathname.getName() : pathname.getAbsolutePath();
+			return path.regionMatches(this.ignoreCase, path.length() - this.extension.length(), this.extension, 0, this.extension.length());
 		}
 		return false;
 	}
@@ -0,0 +1,206 @@
+package org.reichel.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Resultado preguioso de uma busca de arquivos, criado por {@link FindFiles#iterateFiles(String, String...)}.
+ * Um diretrio s  lido quando o consumidor pede mais resultados, apenas um diretrio fica aberto por vez
+ * e a memria usada se limita aos sub-diretrios ainda no visitados. A ordem dos arquivos  a mesma de
+ * {@link FindFiles#findFiles(String, String...)}.
+ * O iterador deve ser fechado caso no seja consumido at o fim:
+ * <pre>
+ *   FileIterator files = new FindFiles().iterateFiles("c:\\unimed\\workspace", "config.xml");
+ *   try {
+ *     while(files.hasNext()){
+ *       File file = files.next();
+ *       ...
+ *     }
+ *   } finally {
+ *     files.close();
+ *   }
+ * </pre>
+ */
+public class FileIterator implements Iterator<File>, Closeable {
+
+	private final FindCriteria criteria;
+
+	private final Integer limit;
+
+	private final Deque<FindCriteria.Branch> pending = new ArrayDeque<FindCriteria.Branch>();
+
+	private DirectoryStream<Path> stream;
+
+	private Iterator<Path> entries;
+
+	private DirectoryCache.Listing listing;
+
+	private int index;
+
+	private FindCriteria.Branch directory;
+
+	private List<FindCriteria.Branch> subDirectories;
+
+	private File next;
+
+	private int count;
+
+	private boolean closed = false;
+
+	FileIterator(FindCriteria criteria, Integer limit){
+		this.criteria = criteria;
+		this.limit = limit;
+		this.pending.push(criteria.rootBranch());
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(this.next == null && !this.closed){
+			if(this.limit != null && this.count >= this.limit){
+				close();
+			} else {
+				this.next = findNext();
+			}
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public File next() {
+		if(!hasNext()){
+			throw new NoSuchElementException();
+		}
+		File result = this.next;
+		this.next = null;
+		this.count++;
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Interrompe a busca liberando o diretrio aberto, hasNext() passa a retornar false.
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		this.pending.clear();
+		closeStream();
+	}
+
+	private File findNext() {
+		while(!this.closed){
+			if(this.entries == null && this.listing == null && !openNextDirectory()){
+				close();
+				return null;
+			}
+			File file = this.listing != null ? nextCached() : nextListed();
+			if(file != null){
+				return file;
+			}
+			finishDirectory();
+		}
+		return null;
+	}
+
+	private File nextListed() {
+		try {
+			while(this.entries.hasNext()){
+				Path entry = this.entries.next();
+				BasicFileAttributes attrs = FindCriteria.readAttributes(entry);
+				BasicFileAttributes target = attrs == null ? null : FindCriteria.follow(entry, attrs);
+				if(target == null){
+					continue;
+				}
+				if(target.isDirectory()){
+					enter(entry, FindCriteria.isLink(attrs));
+				} else if(this.criteria.acceptFile(entry, target)){
+					return entry.toFile();
+				}
+			}
+		} catch (DirectoryIteratorException e) {
+			//diretrio ficou inacessvel durante a leitura, segue para o prximo
+		}
+		return null;
+	}
+
+	private File nextCached() {
+		while(this.index < this.listing.size()){
+			int i = this.index++;
+			Path entry = this.directory.getPath().resolve(this.listing.getName(i));
+			if(this.listing.isDirectory(i)){
+				enter(entry, this.listing.isLink(i));
+			} else if(this.listing.isFile(i) && this.criteria.acceptCachedFile(entry)){
+				return entry.toFile();
+			}
+		}
+		return null;
+	}
+
+	private void enter(Path entry, boolean link) {
+		FindCriteria.Branch branch = this.criteria.enter(this.directory, entry, link);
+		if(branch != null){
+			this.subDirectories.add(branch);
+		}
+	}
+
+	private boolean openNextDirectory() {
+		while(!this.pending.isEmpty()){
+			FindCriteria.Branch directory = this.pending.pop();
+			try {
+				if(this.criteria.isCached()){
+					this.listing = this.criteria.list(directory.getPath());
+					this.index = 0;
+				} else {
+					this.stream = Files.newDirectoryStream(directory.getPath());
+					this.entries = this.stream.iterator();
+				}
+				this.directory = directory;
+				this.subDirectories = new ArrayList<FindCriteria.Branch>();
+				return true;
+			} catch (IOException e) {
+				//diretrio inacessvel, assim como File.listFiles() retornando null
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Os sub-diretrios so empilhados em ordem inversa para serem visitados na ordem da listagem.
+	 */
+	private void finishDirectory() {
+		closeStream();
+		for(int i = this.subDirectories.size() - 1; i >= 0; i--){
+			this.pending.push(this.subDirectories.get(i));
+		}
+		this.subDirectories = null;
+	}
+
+	private void closeStream() {
+		this.entries = null;
+		this.listing = null;
+		if(this.stream != null){
+			try {
+				this.stream.close();
+			} catch (IOException e) {
+				//nada a fazer, o diretrio j foi lido
+			}
+			this.stream = null;
+		}
+	}
+}
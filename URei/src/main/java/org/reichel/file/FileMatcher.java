@@ -0,0 +1,105 @@
+package org.reichel.file;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Conjunto de padres de arquivo compilado uma nica vez e testado de uma s vez para cada arquivo.
+ * Cada padro pode ser:
+ * <ul>
+ * <li>um sufixo, ex: ".jar" ou "config.xml", comparado com o final do nome do arquivo;</li>
+ * <li>um glob, ex: "*.jar" ou "sabius-*-core-context.xml", comparado com o nome do arquivo.</li>
+ * </ul>
+ * Padres que contm separador de diretrio, ex: "META-INF/*.MF", so comparados com o final do caminho completo.
+ */
+public class FileMatcher {
+
+	private final boolean ignoreCase;
+
+	private final String[] nameSuffixes;
+
+	private final String[] pathSuffixes;
+
+	private final Pattern namePattern;
+
+	private final Pattern pathPattern;
+
+	public FileMatcher(boolean ignoreCase, String... patterns){
+		if(patterns == null || patterns.length == 0){
+			throw new IllegalArgumentException("Parameter patterns cannot be null or empty.");
+		}
+		this.ignoreCase = ignoreCase;
+		List<String> nameSuffixes = new ArrayList<String>();
+		List<String> pathSuffixes = new ArrayList<String>();
+		StringBuilder nameGlobs = new StringBuilder();
+		StringBuilder pathGlobs = new StringBuilder();
+		for(String pattern : patterns){
+			if(pattern == null || "".equals(pattern)){
+				throw new IllegalArgumentException("Parameter patterns cannot contain null or empty values.");
+			}
+			String normalized = pattern.replace('\\', '/');
+			boolean hasSeparator = normalized.indexOf('/') != -1;
+			if(Globs.isGlob(normalized)){
+				StringBuilder globs = hasSeparator ? pathGlobs : nameGlobs;
+				globs.append(globs.length() == 0 ? "" : "|").append("(?:").append(Globs.toRegex(normalized)).append(')');
+			} else if(hasSeparator){
+				pathSuffixes.add(normalized);
+			} else {
+				nameSuffixes.add(normalized);
+			}
+		}
+		int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+		this.nameSuffixes = nameSuffixes.toArray(new String[nameSuffixes.size()]);
+		this.pathSuffixes = pathSuffixes.toArray(new String[pathSuffixes.size()]);
+		this.namePattern = nameGlobs.length() == 0 ? null : Pattern.compile(nameGlobs.toString(), flags);
+		this.pathPattern = pathGlobs.length() == 0 ? null : Pattern.compile("(?:^|.*/)(?:" + pathGlobs + ")", flags);
+	}
+
+	/**
+	 * @param path caminho do arquivo
+	 * @return true se o arquivo atender a pelo menos um dos padres
+	 */
+	public boolean matches(Path path){
+		Path fileName = path.getFileName();
+		if(fileName == null){
+			return false;
+		}
+		String name = fileName.toString();
+		for(String suffix : this.nameSuffixes){
+			if(endsWith(name, suffix)){
+				return true;
+			}
+		}
+		if(this.namePattern != null && this.namePattern.matcher(name).matches()){
+			return true;
+		}
+		if(this.pathSuffixes.length > 0 || this.pathPattern != null){
+			String fullPath = path.toString();
+			if(File.separatorChar != '/'){
+				fullPath = fullPath.replace(File.separatorChar, '/');
+			}
+			for(String suffix : this.pathSuffixes){
+				if(endsWith(fullPath, suffix)){
+					return true;
+				}
+			}
+			return this.pathPattern != null && this.pathPattern.matcher(fullPath).matches();
+		}
+		return false;
+	}
+
+	public boolean matches(File file){
+		return matches(file.toPath());
+	}
+
+	private boolean endsWith(String value, String suffix) {
+		return value.regionMatches(this.ignoreCase, value.length() - suffix.length(), suffix, 0, suffix.length());
+	}
+
+	public boolean isIgnoreCase() {
+		return ignoreCase;
+	}
+}
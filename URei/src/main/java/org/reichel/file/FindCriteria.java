@@ -0,0 +1,199 @@
+package org.reichel.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Critrios imutveis de uma busca, compartilhados pelas tarefas paralelas de {@link FindFiles}
+ * e pelo {@link FileIterator}.
+ */
+class FindCriteria {
+
+	private final Path root;
+
+	private final FileMatcher fileMatcher;
+
+	private final ExclusionMatcher exclusions;
+
+	private final Integer maxDeep;
+
+	private final Long modifiedAfter;
+
+	private final DirectoryCache cache;
+
+	private final DirectoryCacheReport cacheReport;
+
+	FindCriteria(Path root, FileMatcher fileMatcher, ExclusionMatcher exclusions, Integer maxDeep, Long modifiedAfter, DirectoryCache cache) {
+		this.root = root;
+		this.fileMatcher = fileMatcher;
+		this.exclusions = exclusions;
+		this.maxDeep = maxDeep;
+		this.modifiedAfter = modifiedAfter;
+		this.cache = cache;
+		this.cacheReport = cache == null ? null : new DirectoryCacheReport();
+	}
+
+	/**
+	 * @param directory sub-diretrio encontrado
+	 * @param deep profundidade do diretrio que contm o sub-diretrio
+	 * @return true se o sub-diretrio deve ser percorrido
+	 */
+	boolean acceptDirectory(Path directory, int deep){
+		return (this.maxDeep == null || deep < this.maxDeep) && !this.exclusions.isExcluded(this.root, directory, true);
+	}
+
+	/**
+	 * @return raiz da busca a percorrer
+	 */
+	Branch rootBranch(){
+		Path realPath;
+		try {
+			realPath = this.root.toRealPath();
+		} catch (IOException e) {
+			realPath = this.root.toAbsolutePath().normalize();
+		}
+		return new Branch(this.root, realPath, 0, null);
+	}
+
+	/**
+	 * Links simblicos para diretrios so seguidos, como em File.listFiles(), exceto quando levam ao prprio
+	 * diretrio ou a um diretrio acima dele no caminho percorrido, o que tornaria a busca infinita.
+	 * @param parent diretrio que contm o sub-diretrio
+	 * @param directory sub-diretrio encontrado
+	 * @param link true se o sub-diretrio  um link simblico ou juno, ver {@link #isLink(BasicFileAttributes)}
+	 * @return sub-diretrio a percorrer, ou null se for excludo, estiver alm da profundidade mxima ou formar um ciclo
+	 */
+	Branch enter(Branch parent, Path directory, boolean link){
+		if(!acceptDirectory(directory, parent.deep)){
+			return null;
+		}
+		Path realPath;
+		if(link){
+			try {
+				realPath = directory.toRealPath();
+			} catch (IOException e) {
+				return null;
+			}
+			for(Branch ancestor = parent; ancestor != null; ancestor = ancestor.parent){
+				if(ancestor.realPath.startsWith(realPath)){
+					return null;
+				}
+			}
+		} else {
+			realPath = parent.realPath.resolve(directory.getFileName());
+		}
+		return new Branch(directory, realPath, parent.deep + 1, parent);
+	}
+
+	/**
+	 * @param attrs atributos da prpria entrada, sem seguir links
+	 * @return true se a entrada  um link simblico ou juno
+	 */
+	static boolean isLink(BasicFileAttributes attrs){
+		return attrs.isSymbolicLink() || attrs.isOther();
+	}
+
+	/**
+	 * @return atributos da prpria entrada, sem seguir links, ou null se ela for inacessvel
+	 */
+	static BasicFileAttributes readAttributes(Path entry){
+		try {
+			return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Links simblicos so seguidos, assim como em File.isFile() e File.isDirectory(). Os atributos do destino
+	 * s so lidos quando a entrada  um link, as demais entradas custam uma nica leitura de atributos.
+	 * @param attrs atributos da prpria entrada, sem seguir links
+	 * @return atributos do destino ou null se a entrada for um link quebrado
+	 */
+	static BasicFileAttributes follow(Path entry, BasicFileAttributes attrs){
+		if(!isLink(attrs)){
+			return attrs;
+		}
+		try {
+			return Files.readAttributes(entry, BasicFileAttributes.class);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	boolean acceptFile(Path file, BasicFileAttributes attrs){
+		return attrs.isRegularFile()
+				&& (this.modifiedAfter == null || attrs.lastModifiedTime().toMillis() > this.modifiedAfter)
+				&& this.fileMatcher.matches(file)
+				&& !this.exclusions.isExcluded(this.root, file, false);
+	}
+
+	/**
+	 * Arquivo vindo de uma listagem em cache: os atributos s so lidos quando h filtro por data.
+	 */
+	boolean acceptCachedFile(Path file){
+		if(!this.fileMatcher.matches(file) || this.exclusions.isExcluded(this.root, file, false)){
+			return false;
+		}
+		if(this.modifiedAfter == null){
+			return true;
+		}
+		try {
+			return Files.getLastModifiedTime(file).toMillis() > this.modifiedAfter;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	boolean isCached(){
+		return this.cache != null;
+	}
+
+	DirectoryCache.Listing list(Path directory) throws IOException {
+		return this.cache.list(directory, this.cacheReport);
+	}
+
+	DirectoryCacheReport getCacheReport() {
+		return cacheReport;
+	}
+
+	Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * Diretrio a percorrer, com o seu caminho real e o diretrio de cima, usados para detectar ciclos.
+	 */
+	static final class Branch {
+
+		private final Path path;
+
+		private final Path realPath;
+
+		private final int deep;
+
+		private final Branch parent;
+
+		private Branch(Path path, Path realPath, int deep, Branch parent) {
+			this.path = path;
+			this.realPath = realPath;
+			this.deep = deep;
+			this.parent = parent;
+		}
+
+		Path getPath() {
+			return path;
+		}
+
+		Path getRealPath() {
+			return realPath;
+		}
+
+		int getDeep() {
+			return deep;
+		}
+	}
+}
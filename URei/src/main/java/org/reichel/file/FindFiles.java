@@ -1,22 +1,153 @@
 package org.reichel.file;
 
 import java.io.File;
-import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
+import org.reichel.metrics.Counter;
+import org.reichel.metrics.Histogram;
+import org.reichel.metrics.MetricsRegistry;
+
+/**
+ * Busca de arquivos em uma rvore de diretrios.
+ * Cada diretrio  lido uma nica vez e cada entrada custa uma nica leitura de atributos, sem seguir links,
+ * mais uma leitura do destino quando a entrada  um link; no Windows os atributos vm da prpria leitura
+ * do diretrio. Os sub-diretrios so percorridos em paralelo e o resultado
+ * mantm a mesma ordem de uma busca sequencial: os arquivos do diretrio seguidos dos arquivos de cada
+ * sub-diretrio. Links simblicos so seguidos, exceto os que levam a um diretrio acima no caminho percorrido.
+ * Exemplo de utilizao:
+ * <pre>
+ *   List&lt;File&gt; files = new FindFiles().deep(2).findFiles("c:\\unimed\\workspace", ".jar", "*-core-context.xml");
+ * </pre>
+ */
 public class FindFiles {
 
+	private static final ForkJoinPool pool = new ForkJoinPool();
+
+	private static final Counter walks = MetricsRegistry.getDefault().counter("find.walks");
+
+	private static final Counter filesFound = MetricsRegistry.getDefault().counter("find.files");
+
+	private static final Histogram walkTime = MetricsRegistry.getDefault().histogram("find.time");
+
+	private static final Counter cacheHits = MetricsRegistry.getDefault().counter("find.cache.hits");
+
+	private static final Counter cacheMisses = MetricsRegistry.getDefault().counter("find.cache.misses");
+
 	private Integer deep = null;
-	
+
 	private boolean ignoreCase = true;
-	
+
+	private Long modifiedAfter = null;
+
+	private Integer limit = null;
+
+	private ExclusionMatcher exclusions = ExclusionMatcher.NONE;
+
+	private DirectoryCache cache = null;
+
+	private DirectoryCacheReport cacheReport = null;
+
 	public List<File> findFileByExtension(String rootFolder, String extension){
-		List<File> result = new ArrayList<File>();
+		return findFiles(rootFolder, extension);
+	}
+
+	/**
+	 * Busca em uma nica passada os arquivos que atendem a qualquer um dos padres.
+	 * @param rootFolder diretrio raiz da busca
+	 * @param patterns sufixos (ex: ".jar") ou globs (ex: "*-core-context.xml")
+	 * @return arquivos encontrados ou lista vazia se rootFolder no for um diretrio
+	 * @see FileMatcher
+	 */
+	public List<File> findFiles(String rootFolder, String... patterns){
+		return findFiles(rootFolder, new FileMatcher(this.ignoreCase, patterns));
+	}
+
+	public List<File> findFiles(String rootFolder, FileMatcher fileMatcher){
+		if(rootFolder == null){
+			throw new IllegalArgumentException("Parameter rootFolder cannot be null.");
+		}
+		if(fileMatcher == null){
+			throw new IllegalArgumentException("Parameter fileMatcher cannot be null.");
+		}
 		File root = new File(rootFolder);
-		if(root.isDirectory()){
-			result = findFile(root, new ExtensionFileFilter(extension).setIgnoreCase(ignoreCase), new ArrayList<File>(), 0);
+		if(!root.isDirectory()){
+			return new ArrayList<File>();
+		}
+		long start = System.nanoTime();
+		FindCriteria criteria = criteria(root, fileMatcher);
+		List<File> result = this.limit != null ? collect(new FileIterator(criteria, this.limit)) : pool.invoke(new FindTask(criteria, criteria.rootBranch()));
+		walks.increment();
+		filesFound.add(result.size());
+		walkTime.updateElapsed(start);
+		if(this.cacheReport != null){
+			cacheHits.add(this.cacheReport.getHits());
+			cacheMisses.add(this.cacheReport.getMisses());
+		}
+		return result;
+	}
+
+	/**
+	 * Busca preguiosa: os diretrios so lidos  medida que o resultado  consumido,
+	 * permitindo interromper a busca assim que o arquivo desejado for encontrado.
+	 * @param rootFolder diretrio raiz da busca
+	 * @param patterns sufixos (ex: ".jar") ou globs (ex: "*-core-context.xml")
+	 * @return iterador que deve ser fechado caso no seja consumido at o fim
+	 * @see FileIterator
+	 */
+	public FileIterator iterateFiles(String rootFolder, String... patterns){
+		return iterateFiles(rootFolder, new FileMatcher(this.ignoreCase, patterns));
+	}
+
+	public FileIterator iterateFiles(String rootFolder, FileMatcher fileMatcher){
+		if(rootFolder == null){
+			throw new IllegalArgumentException("Parameter rootFolder cannot be null.");
+		}
+		if(fileMatcher == null){
+			throw new IllegalArgumentException("Parameter fileMatcher cannot be null.");
+		}
+		return new FileIterator(criteria(new File(rootFolder), fileMatcher), this.limit);
+	}
+
+	private FindCriteria criteria(File root, FileMatcher fileMatcher) {
+		FindCriteria criteria = new FindCriteria(root.toPath(), fileMatcher, this.exclusions, this.deep, this.modifiedAfter, this.cache);
+		this.cacheReport = criteria.getCacheReport();
+		return criteria;
+	}
+
+	/**
+	 * @param rootFolder diretrio raiz da busca
+	 * @param patterns sufixos (ex: ".jar") ou globs (ex: "*-core-context.xml")
+	 * @return primeiro arquivo encontrado ou null, a busca  interrompida assim que o arquivo  encontrado
+	 */
+	public File findFirst(String rootFolder, String... patterns){
+		FileIterator files = iterateFiles(rootFolder, patterns);
+		try {
+			return files.hasNext() ? files.next() : null;
+		} finally {
+			files.close();
+		}
+	}
+
+	private List<File> collect(FileIterator files) {
+		List<File> result = new ArrayList<File>();
+		try {
+			while(files.hasNext()){
+				result.add(files.next());
+			}
+		} finally {
+			files.close();
 		}
 		return result;
 	}
@@ -25,27 +156,169 @@ public class FindFiles {
 		this.ignoreCase = ignoreCase;
 		return this;
 	}
-	
+
 	public FindFiles deep(Integer deep){
 		this.deep = deep;
 		return this;
 	}
-	
-	private List<File> findFile(File root, FileFilter fileFilter, List<File> result, Integer deep) {
-		File[] listFiles = root.listFiles(fileFilter);
-		if(listFiles != null && listFiles.length > 0){
-			result.addAll(Arrays.asList(listFiles));
-		}
-		
-		if(this.deep == null || deep < this.deep){
-			listFiles = root.listFiles(new DirectoryFileFilter());
-			if(listFiles != null && listFiles.length > 0){
-				for(File dir : listFiles){
-					result = findFile(dir, fileFilter, result, deep + 1);
+
+	/**
+	 * Sub-diretrios excludos no so lidos, toda a sub-rvore  ignorada.
+	 * @param rules regras no estilo .gitignore, ex: ".svn/", "target/", "node_modules/"
+	 * @return a instancia de FindFiles
+	 * @see ExclusionMatcher
+	 */
+	public FindFiles exclude(String... rules){
+		return exclude(new ExclusionMatcher(this.ignoreCase, rules));
+	}
+
+	public FindFiles exclude(ExclusionMatcher exclusions){
+		this.exclusions = exclusions == null ? ExclusionMatcher.NONE : exclusions;
+		return this;
+	}
+
+	/**
+	 * Reaproveita as listagens de diretrios no alterados desde a ltima busca.
+	 * O cache no  gravado automaticamente, cabe a quem o criou chamar {@link DirectoryCache#save()}.
+	 * @param cache cache de listagens, null l todos os diretrios
+	 * @return a instancia de FindFiles
+	 */
+	public FindFiles cache(DirectoryCache cache){
+		this.cache = cache;
+		return this;
+	}
+
+	/**
+	 * @return acertos e falhas do cache na ltima busca, ou null se a busca no usou cache.
+	 * Em buscas preguiosas os contadores avanam  medida que o iterador  consumido.
+	 */
+	public DirectoryCacheReport getCacheReport() {
+		return cacheReport;
+	}
+
+	/**
+	 * @param modifiedAfter considera apenas arquivos alterados depois deste instante em milisegundos, null no filtra
+	 * @return a instancia de FindFiles
+	 */
+	public FindFiles modifiedAfter(Long modifiedAfter){
+		this.modifiedAfter = modifiedAfter;
+		return this;
+	}
+
+	/**
+	 * @param limit quantidade mxima de arquivos, a busca  interrompida ao atingir o limite, null no limita
+	 * @return a instancia de FindFiles
+	 */
+	public FindFiles limit(Integer limit){
+		if(limit != null && limit < 0){
+			throw new IllegalArgumentException("Parameter limit cannot be negative.");
+		}
+		this.limit = limit;
+		return this;
+	}
+
+	private static class FindTask extends RecursiveTask<List<File>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FindCriteria criteria;
+
+		private final FindCriteria.Branch directory;
+
+		FindTask(FindCriteria criteria, FindCriteria.Branch directory) {
+			this.criteria = criteria;
+			this.directory = directory;
+		}
+
+		@Override
+		protected List<File> compute() {
+			List<File> result = new ArrayList<File>();
+			List<FindCriteria.Branch> directories = new ArrayList<FindCriteria.Branch>();
+			try {
+				if(this.criteria.isCached()){
+					listCached(result, directories);
+				} else {
+					list(result, directories);
+				}
+			} catch (IOException e) {
+				return result;
+			} catch (DirectoryIteratorException e) {
+				return result;
+			}
+			if(!directories.isEmpty()){
+				List<FindTask> tasks = new ArrayList<FindTask>(directories.size());
+				for(FindCriteria.Branch dir : directories){
+					tasks.add(new FindTask(this.criteria, dir));
+				}
+				invokeAll(tasks);
+				for(FindTask task : tasks){
+					result.addAll(task.join());
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * O diretrio  lido pelo caminho real, que no  um link, e as entradas so devolvidas no caminho percorrido.
+		 * Os atributos entregues por Files.walkFileTree no seguem links e no Windows vm da prpria leitura do diretrio.
+		 */
+		private void list(final List<File> result, final List<FindCriteria.Branch> directories) throws IOException {
+			final Path realPath = this.directory.getRealPath();
+			Files.walkFileTree(realPath, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if(file.equals(realPath)){
+						//o diretrio foi trocado por um link durante a busca
+						return FileVisitResult.TERMINATE;
+					}
+					Path entry = FindTask.this.directory.getPath().resolve(file.getFileName());
+					BasicFileAttributes target = FindCriteria.follow(file, attrs);
+					if(target == null){
+						return FileVisitResult.CONTINUE;
+					}
+					if(target.isDirectory()){
+						FindCriteria.Branch branch = FindTask.this.criteria.enter(FindTask.this.directory, entry, FindCriteria.isLink(attrs));
+						if(branch != null){
+							directories.add(branch);
+						}
+					} else if(FindTask.this.criteria.acceptFile(entry, target)){
+						result.add(entry.toFile());
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+					if(file.equals(realPath)){
+						throw exc;
+					}
+					//entrada inacessvel, ignorada
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+					if(exc != null){
+						throw exc;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+
+		private void listCached(List<File> result, List<FindCriteria.Branch> directories) throws IOException {
+			DirectoryCache.Listing listing = this.criteria.list(this.directory.getPath());
+			for(int i = 0; i < listing.size(); i++){
+				Path entry = this.directory.getPath().resolve(listing.getName(i));
+				if(listing.isDirectory(i)){
+					FindCriteria.Branch branch = this.criteria.enter(this.directory, entry, listing.isLink(i));
+					if(branch != null){
+						directories.add(branch);
+					}
+				} else if(listing.isFile(i) && this.criteria.acceptCachedFile(entry)){
+					result.add(entry.toFile());
 				}
 			}
 		}
-		return result;
 	}
-	
 }
@@ -0,0 +1,109 @@
+package org.reichel.file;
+
+/**
+ * Converso de padres glob para expresses regulares, sempre com '/' como separador.
+ * Suporta: * (qualquer coisa exceto '/'), ** (qualquer coisa, inclusive '/'), ? (um caractere exceto '/'),
+ * [abc], [!abc], {a,b} e \ para escapar o prximo caractere.
+ */
+class Globs {
+
+	private static final String REGEX_META = ".^$+()|\\";
+
+	private Globs(){
+	}
+
+	static boolean isGlob(String pattern){
+		for(int i = 0; i < pattern.length(); i++){
+			if("*?[{".indexOf(pattern.charAt(i)) != -1){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static String toRegex(String glob){
+		StringBuilder regex = new StringBuilder(glob.length() * 2);
+		boolean inGroup = false;
+		int length = glob.length();
+		for(int i = 0; i < length; i++){
+			char ch = glob.charAt(i);
+			switch (ch) {
+			case '\\':
+				if(i + 1 < length){
+					appendLiteral(regex, glob.charAt(++i));
+				}
+				break;
+			case '*':
+				if(i + 1 < length && glob.charAt(i + 1) == '*'){
+					i++;
+					if(i + 1 < length && glob.charAt(i + 1) == '/'){
+						i++;
+						regex.append("(?:.*/)?");
+					} else {
+						regex.append(".*");
+					}
+				} else {
+					regex.append("[^/]*");
+				}
+				break;
+			case '?':
+				regex.append("[^/]");
+				break;
+			case '[':
+				int end = glob.indexOf(']', i + 1);
+				if(end == -1){
+					appendLiteral(regex, ch);
+				} else {
+					regex.append('[');
+					int start = i + 1;
+					if(start < end && glob.charAt(start) == '!'){
+						regex.append('^');
+						start++;
+					}
+					for(int j = start; j < end; j++){
+						char c = glob.charAt(j);
+						if(c == '\\' || c == '[' || c == '&'){
+							regex.append('\\');
+						}
+						regex.append(c);
+					}
+					regex.append(']');
+					i = end;
+				}
+				break;
+			case '{':
+				if(inGroup){
+					appendLiteral(regex, ch);
+				} else {
+					inGroup = true;
+					regex.append("(?:");
+				}
+				break;
+			case '}':
+				if(inGroup){
+					inGroup = false;
+					regex.append(')');
+				} else {
+					appendLiteral(regex, ch);
+				}
+				break;
+			case ',':
+				regex.append(inGroup ? '|' : ',');
+				break;
+			default:
+				appendLiteral(regex, ch);
+			}
+		}
+		if(inGroup){
+			throw new IllegalArgumentException("Padro glob invlido, '{' sem '}': " + glob);
+		}
+		return regex.toString();
+	}
+
+	private static void appendLiteral(StringBuilder regex, char ch) {
+		if(REGEX_META.indexOf(ch) != -1 || ch == '{' || ch == '}' || ch == '[' || ch == ']' || ch == '*' || ch == '?'){
+			regex.append('\\');
+		}
+		regex.append(ch);
+	}
+}
@@ -0,0 +1,101 @@
+package org.reichel.file;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Grava um arquivo em um temporrio ao lado do destino ("destino.part") e s substitui o destino em {@link #commit()}.
+ * Uma gravao interrompida, ex: conexo perdida durante um download, mantm o arquivo anterior intacto.
+ * A substituio troca a entrada do diretrio em vez de gravar sobre o arquivo existente, por isso um destino
+ * que seja link do {@link ContentStore}, compartilhado com outros diretrios, nunca  alterado.
+ * Exemplo de utilizao:
+ * <pre>
+ *   ReplacingOutputStream os = new ReplacingOutputStream(target);
+ *   try {
+ *     ...
+ *     os.commit();
+ *   } finally {
+ *     os.close();
+ *   }
+ * </pre>
+ */
+public class ReplacingOutputStream extends FilterOutputStream {
+
+	private final Path target;
+
+	private final Path temp;
+
+	private boolean closed = false;
+
+	private boolean committed = false;
+
+	/**
+	 * @param target arquivo de destino, o diretrio deve existir
+	 * @throws IOException se o arquivo temporrio no puder ser criado
+	 */
+	public ReplacingOutputStream(Path target) throws IOException {
+		super(null);
+		if(target == null){
+			throw new IllegalArgumentException("Parameter target cannot be null.");
+		}
+		this.target = target;
+		this.temp = target.resolveSibling(target.getFileName() + ".part");
+		this.out = Files.newOutputStream(this.temp);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		this.out.write(b, off, len);
+	}
+
+	/**
+	 * Fecha o temporrio e o move sobre o destino.
+	 * @throws IOException se a gravao ou a substituio falhar, neste caso o destino no  alterado
+	 */
+	public void commit() throws IOException {
+		if(this.closed){
+			throw new IOException("Gravao de '" + this.target + "' j encerrada.");
+		}
+		this.closed = true;
+		this.out.close();
+		replace(this.temp, this.target);
+		this.committed = true;
+	}
+
+	/**
+	 * Sem {@link #commit()} descarta o temporrio, mantendo o destino anterior.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(this.committed){
+			return;
+		}
+		try {
+			if(!this.closed){
+				this.closed = true;
+				this.out.close();
+			}
+		} finally {
+			Files.deleteIfExists(this.temp);
+		}
+	}
+
+	public Path getTarget() {
+		return target;
+	}
+
+	/**
+	 * Move o arquivo sobre o destino, atomicamente quando o sistema de arquivos permitir.
+	 */
+	public static void replace(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
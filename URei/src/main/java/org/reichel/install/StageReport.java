@@ -0,0 +1,99 @@
+package org.reichel.install;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tempo de trabalho e profundidade da fila de entrada de um estgio do {@link UpdatePipeline}.
+ * Pode ser consultado durante a execuo para identificar o estgio que limita a atualizao:
+ * uma fila sempre cheia indica que o estgio no acompanha o anterior.
+ */
+public class StageReport {
+
+	private final String name;
+
+	private final int workers;
+
+	private final BlockingQueue<UpdateItem> input;
+
+	private final AtomicInteger items = new AtomicInteger();
+
+	private final AtomicInteger failures = new AtomicInteger();
+
+	private final AtomicLong busyNanos = new AtomicLong();
+
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+	StageReport(String name, int workers, BlockingQueue<UpdateItem> input) {
+		this.name = name;
+		this.workers = workers;
+		this.input = input;
+	}
+
+	void processed(long startNanos){
+		this.items.incrementAndGet();
+		this.busyNanos.addAndGet(System.nanoTime() - startNanos);
+	}
+
+	void failed(){
+		this.failures.incrementAndGet();
+	}
+
+	void queued(){
+		if(this.input == null){
+			return;
+		}
+		int depth = this.input.size();
+		int current;
+		while(depth > (current = this.maxQueueDepth.get()) && !this.maxQueueDepth.compareAndSet(current, depth)){
+			//outra thread alterou o mximo, tenta novamente
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * @return itens processados pelo estgio
+	 */
+	public int getItems() {
+		return items.get();
+	}
+
+	/**
+	 * @return itens que falharam neste estgio e no seguiram para o prximo
+	 */
+	public int getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * @return soma do tempo de trabalho de todas as threads do estgio, sem contar a espera na fila
+	 */
+	public long getBusyMillis() {
+		return busyNanos.get() / 1000000;
+	}
+
+	/**
+	 * @return itens aguardando na fila de entrada no momento da chamada
+	 */
+	public int getQueueDepth() {
+		return input == null ? 0 : Math.max(0, input.size() - (input.contains(UpdateItem.END) ? 1 : 0));
+	}
+
+	public int getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	@Override
+	public String toString() {
+		return this.name + ": itens=" + getItems() + ", falhas=" + getFailures() + ", threads=" + this.workers + ", trabalho=" + getBusyMillis()
+				+ "ms, fila=" + getQueueDepth() + ", fila mxima=" + getMaxQueueDepth();
+	}
+}
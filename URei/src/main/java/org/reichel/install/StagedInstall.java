@@ -0,0 +1,438 @@
+package org.reichel.install;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+import org.reichel.command.output.Output;
+import org.reichel.download.DownloadFile;
+import org.reichel.file.ContentStore;
+import org.reichel.jar.JarUtils;
+
+/**
+ * Instalao em duas fases: os arquivos so baixados e extrados em paralelo em um diretrio de preparao
+ * enquanto a verso atual continua em uso, e s ento a nova verso  ativada trocando os diretrios.
+ * A aplicao fica indisponvel apenas durante a troca, e no durante todo o download e extrao.
+ * <ul>
+ * <li>Modo padro, por renomeao: "lib" passa a ser "lib.previous" e "lib.staging" passa a ser "lib".
+ * So duas renomeaes no mesmo volume, funciona em qualquer sistema de arquivos.</li>
+ * <li>Modo link simblico: "lib"  um link para "lib.releases/N", a troca substitui o link de uma s vez,
+ * sem nenhum instante em que "lib" no exista. Requer permisso para criar links simblicos.</li>
+ * </ul>
+ * Exemplo de utilizao:
+ * <pre>
+ *   StagedInstall install = new StagedInstall("c:\\unimed\\app\\lib");
+ *   install.prepare(true);
+ *   install.download("http://servidor/atualizacao", "core.jar");
+ *   install.extract("c:\\temp\\config.jar");
+ *   install.stage();
+ *   install.activate();
+ *   ...
+ *   install.rollback();
+ * </pre>
+ */
+public class StagedInstall {
+
+	private static final Logger logger = Logger.getLogger(StagedInstall.class);
+
+	public static final String STAGING_SUFFIX = ".staging";
+
+	public static final String PREVIOUS_SUFFIX = ".previous";
+
+	public static final String RELEASES_SUFFIX = ".releases";
+
+	private final Path live;
+
+	private final Path staging;
+
+	private final Path previous;
+
+	private final Path releases;
+
+	private boolean symlink = false;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private ContentStore contentStore;
+
+	private final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+	/**
+	 * @param livePath diretrio em uso pela aplicao
+	 */
+	public StagedInstall(String livePath){
+		if(livePath == null || "".equals(livePath)){
+			throw new IllegalArgumentException("Parameter livePath cannot be null or empty.");
+		}
+		this.live = Paths.get(livePath).toAbsolutePath().normalize();
+		String name = this.live.getFileName().toString();
+		this.staging = this.live.resolveSibling(name + STAGING_SUFFIX);
+		this.previous = this.live.resolveSibling(name + PREVIOUS_SUFFIX);
+		this.releases = this.live.resolveSibling(name + RELEASES_SUFFIX);
+	}
+
+	/**
+	 * @param symlink true para ativar as verses trocando um link simblico
+	 * @return a instancia de StagedInstall
+	 */
+	public StagedInstall symlink(boolean symlink){
+		this.symlink = symlink;
+		return this;
+	}
+
+	/**
+	 * @param threads quantidade de downloads e extraes simultneos em {@link #stage()}
+	 * @return a instancia de StagedInstall
+	 */
+	public StagedInstall threads(int threads){
+		if(threads <= 0){
+			throw new IllegalArgumentException("Parameter threads must be greater than zero.");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * @param contentStore repositrio usado na cpia da verso atual, nos downloads e nas extraes, de forma que
+	 * arquivos iguais aos j instalados viram links em vez de novas cpias; null para copiar
+	 * @return a instancia de StagedInstall
+	 */
+	public StagedInstall contentStore(ContentStore contentStore){
+		this.contentStore = contentStore;
+		return this;
+	}
+
+	/**
+	 * Cria um diretrio de preparao vazio, descartando o de uma preparao anterior no ativada.
+	 * @param copyCurrent true para partir de uma cpia da verso atual, necessrio quando apenas
+	 * os arquivos alterados sero baixados
+	 * @return diretrio de preparao
+	 * @throws IOException caso no seja possvel criar ou copiar o diretrio
+	 */
+	public File prepare(boolean copyCurrent) throws IOException {
+		discard();
+		if(copyCurrent && Files.isDirectory(this.live)){
+			copyTree(this.live.toRealPath(), this.staging, this.contentStore);
+		} else {
+			Files.createDirectories(this.staging);
+		}
+		return this.staging.toFile();
+	}
+
+	/**
+	 * Agenda o download de um arquivo para o diretrio de preparao.
+	 * @param remoteTargetFolder URL do diretrio remoto
+	 * @param fileName caminho do arquivo relativo ao diretrio remoto, mantido dentro do diretrio de preparao
+	 * @return a instancia de StagedInstall
+	 */
+	public StagedInstall download(final String remoteTargetFolder, final String fileName){
+		if(remoteTargetFolder == null){
+			throw new IllegalArgumentException("Parameter remoteTargetFolder cannot be null.");
+		}
+		if(fileName == null || "".equals(fileName)){
+			throw new IllegalArgumentException("Parameter fileName cannot be null or empty.");
+		}
+		this.tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				//a cpia da verso atual no  sobrescrita no lugar
+				Files.deleteIfExists(staging.resolve(fileName));
+				DownloadFile downloadFile = new DownloadFile(new Output<Integer>() {
+					@Override
+					public void output(Integer output) {
+					}
+				}, remoteTargetFolder).contentStore(contentStore);
+				downloadFile.download(fileName, staging.toString());
+				if(downloadFile.getDownloadedFile() == null || !downloadFile.getDownloadedFile().isFile()){
+					throw new IOException("No foi possvel baixar '" + fileName + "' de '" + remoteTargetFolder + "'");
+				}
+				return null;
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Agenda a extrao de um jar para o diretrio de preparao. Uma falha na extrao faz {@link #stage()} falhar.
+	 * @param jarFilePath caminho do jar
+	 * @return a instancia de StagedInstall
+	 */
+	public StagedInstall extract(final String jarFilePath){
+		if(jarFilePath == null || "".equals(jarFilePath)){
+			throw new IllegalArgumentException("Parameter jarFilePath cannot be null or empty.");
+		}
+		this.tasks.add(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				new JarUtils().contentStore(contentStore).extractFilesStrict(jarFilePath, staging.toString());
+				return null;
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Executa em paralelo os downloads e extraes agendados. A verso atual no  alterada.
+	 * @return a instancia de StagedInstall
+	 * @throws IOException caso alguma tarefa falhe, o diretrio de preparao  mantido para anlise
+	 */
+	public StagedInstall stage() throws IOException {
+		if(!Files.isDirectory(this.staging)){
+			throw new IllegalStateException("Diretrio de preparao inexistente, utilize o mtodo prepare.");
+		}
+		List<Callable<Void>> pending = new ArrayList<Callable<Void>>(this.tasks);
+		this.tasks.clear();
+		if(pending.isEmpty()){
+			return this;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads, pending.size()), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "StagedInstall-stage");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			List<Future<Void>> futures = executor.invokeAll(pending);
+			for(Future<Void> future : futures){
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Preparao interrompida.", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return this;
+	}
+
+	/**
+	 * Ativa a verso preparada. A verso substituda  mantida para {@link #rollback()}.
+	 * @throws IOException caso no seja possvel trocar os diretrios, a verso atual  mantida
+	 */
+	public synchronized void activate() throws IOException {
+		if(!Files.isDirectory(this.staging)){
+			throw new IllegalStateException("Diretrio de preparao inexistente, utilize os mtodos prepare e stage.");
+		}
+		if(this.symlink){
+			activateLink();
+		} else {
+			activateRename();
+		}
+		logger.info("Nova verso ativada em '" + this.live + "'");
+	}
+
+	private void activateRename() throws IOException {
+		deleteTree(this.previous);
+		boolean hasLive = Files.exists(this.live, LinkOption.NOFOLLOW_LINKS);
+		if(hasLive){
+			move(this.live, this.previous);
+		}
+		try {
+			move(this.staging, this.live);
+		} catch (IOException e) {
+			if(hasLive){
+				move(this.previous, this.live);
+			}
+			throw e;
+		}
+	}
+
+	private void activateLink() throws IOException {
+		//a verso anterior de uma ativao por renomeao  um diretrio, que no pode ser substitudo por um link
+		if(Files.exists(this.previous, LinkOption.NOFOLLOW_LINKS) && !Files.isSymbolicLink(this.previous)){
+			deleteTree(this.previous);
+		}
+		Files.createDirectories(this.releases);
+		if(Files.isDirectory(this.live, LinkOption.NOFOLLOW_LINKS)){
+			//primeira ativao: o diretrio atual passa a ser uma verso
+			Path initial = nextRelease();
+			move(this.live, initial);
+			try {
+				Files.createSymbolicLink(this.live, initial);
+			} catch (IOException e) {
+				move(initial, this.live);
+				throw e;
+			}
+		}
+		Path release = nextRelease();
+		move(this.staging, release);
+		Path current = Files.isSymbolicLink(this.live) ? Files.readSymbolicLink(this.live) : null;
+		replaceLink(this.live, release);
+		if(current != null){
+			replaceLink(this.previous, current);
+		}
+		removeOldReleases();
+	}
+
+	/**
+	 * Volta para a verso anterior  ltima ativao. Uma segunda chamada volta para a verso desfeita.
+	 * @throws IOException caso no seja possvel trocar os diretrios
+	 */
+	public synchronized void rollback() throws IOException {
+		if(!Files.exists(this.previous, LinkOption.NOFOLLOW_LINKS)){
+			throw new IllegalStateException("No existe verso anterior em '" + this.previous + "'");
+		}
+		if(Files.isSymbolicLink(this.live) && Files.isSymbolicLink(this.previous)){
+			Path current = Files.readSymbolicLink(this.live);
+			replaceLink(this.live, Files.readSymbolicLink(this.previous));
+			replaceLink(this.previous, current);
+		} else {
+			Path swap = this.live.resolveSibling(this.live.getFileName() + ".rollback");
+			deleteTree(swap);
+			move(this.live, swap);
+			try {
+				move(this.previous, this.live);
+			} catch (IOException e) {
+				move(swap, this.live);
+				throw e;
+			}
+			try {
+				move(swap, this.previous);
+			} catch (IOException e) {
+				//desfaz a troca para no deixar a verso atual em swap
+				move(this.live, this.previous);
+				move(swap, this.live);
+				throw e;
+			}
+		}
+		logger.info("Verso anterior restaurada em '" + this.live + "'");
+	}
+
+	/**
+	 * Remove o diretrio de preparao sem alterar a verso atual.
+	 * @throws IOException caso no seja possvel remover o diretrio
+	 */
+	public void discard() throws IOException {
+		this.tasks.clear();
+		deleteTree(this.staging);
+	}
+
+	private Path nextRelease() {
+		long id = System.currentTimeMillis();
+		Path release;
+		while(Files.exists(release = this.releases.resolve(Long.toString(id)), LinkOption.NOFOLLOW_LINKS)){
+			id++;
+		}
+		return release;
+	}
+
+	/**
+	 * Mantm apenas as verses apontadas pelos links atual e anterior.
+	 */
+	private void removeOldReleases() throws IOException {
+		List<Path> keep = new ArrayList<Path>();
+		for(Path link : new Path[]{this.live, this.previous}){
+			if(Files.isSymbolicLink(link)){
+				keep.add(this.releases.resolve(Files.readSymbolicLink(link)).normalize());
+			}
+		}
+		File[] releaseDirs = this.releases.toFile().listFiles();
+		if(releaseDirs != null){
+			for(File release : releaseDirs){
+				if(!keep.contains(release.toPath().normalize())){
+					deleteTree(release.toPath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cria o novo link com outro nome e o renomeia sobre o existente, a troca  atmica.
+	 */
+	private static void replaceLink(Path link, Path target) throws IOException {
+		Path temp = link.resolveSibling(link.getFileName() + ".link");
+		Files.deleteIfExists(temp);
+		Files.createSymbolicLink(temp, target);
+		Files.move(temp, link, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target);
+		}
+	}
+
+	private static void copyTree(final Path source, final Path target, final ContentStore contentStore) throws IOException {
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Files.createDirectories(target.resolve(source.relativize(dir)));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if(contentStore != null){
+					contentStore.install(file, target.resolve(source.relativize(file)));
+				} else {
+					Files.copy(file, target.resolve(source.relativize(file)), StandardCopyOption.COPY_ATTRIBUTES);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Links simblicos so removidos sem remover o destino.
+	 */
+	static void deleteTree(Path path) throws IOException {
+		if(!Files.exists(path, LinkOption.NOFOLLOW_LINKS)){
+			return;
+		}
+		if(Files.isSymbolicLink(path)){
+			Files.delete(path);
+			return;
+		}
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				if(exc != null){
+					throw exc;
+				}
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	public File getLive() {
+		return live.toFile();
+	}
+
+	public File getStaging() {
+		return staging.toFile();
+	}
+
+	public File getPrevious() {
+		return previous.toFile();
+	}
+}
@@ -0,0 +1,85 @@
+package org.reichel.install;
+
+import java.io.File;
+
+import org.reichel.jar.JarVersion;
+
+/**
+ * Jar que percorre os estgios do {@link UpdatePipeline}, acumulando o resultado de cada estgio.
+ */
+public class UpdateItem {
+
+	/** Marca o fim de uma fila. */
+	static final UpdateItem END = new UpdateItem(null, null);
+
+	private final String key;
+
+	private final JarVersion localVersion;
+
+	private JarVersion remoteVersion;
+
+	private File downloadedFile;
+
+	private File installedFile;
+
+	private Exception error;
+
+	UpdateItem(String key, JarVersion localVersion) {
+		this.key = key;
+		this.localVersion = localVersion;
+	}
+
+	/**
+	 * @return caminho do jar relativo ao diretrio raiz, ex: "lib\\core.jar"
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return verso instalada ou null se o jar no existir localmente ou no tiver verso
+	 */
+	public JarVersion getLocalVersion() {
+		return localVersion;
+	}
+
+	public JarVersion getRemoteVersion() {
+		return remoteVersion;
+	}
+
+	void setRemoteVersion(JarVersion remoteVersion) {
+		this.remoteVersion = remoteVersion;
+	}
+
+	public File getDownloadedFile() {
+		return downloadedFile;
+	}
+
+	void setDownloadedFile(File downloadedFile) {
+		this.downloadedFile = downloadedFile;
+	}
+
+	public File getInstalledFile() {
+		return installedFile;
+	}
+
+	void setInstalledFile(File installedFile) {
+		this.installedFile = installedFile;
+	}
+
+	/**
+	 * @return problema que interrompeu a atualizao do jar ou null
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	void setError(Exception error) {
+		this.error = error;
+	}
+
+	@Override
+	public String toString() {
+		return this.key + " " + this.localVersion + " -> " + this.remoteVersion + (this.error == null ? "" : " erro: " + this.error.getMessage());
+	}
+}
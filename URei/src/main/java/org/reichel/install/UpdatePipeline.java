@@ -0,0 +1,490 @@
+package org.reichel.install;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.reichel.command.output.Output;
+import org.reichel.download.DownloadFile;
+import org.reichel.file.ContentStore;
+import org.reichel.file.ExclusionMatcher;
+import org.reichel.file.FileIterator;
+import org.reichel.file.FindFiles;
+import org.reichel.file.ReplacingOutputStream;
+import org.reichel.jar.JarTypeEnum;
+import org.reichel.jar.JarUtils;
+import org.reichel.jar.JarVersion;
+
+/**
+ * Atualizao em estgios concorrentes ligados por filas limitadas:
+ * <pre>
+ *   varredura -&gt; comparao -&gt; download -&gt; verificao -&gt; instalao
+ * </pre>
+ * Cada jar segue para o prximo estgio assim que termina o anterior, ento um jar j  instalado
+ * enquanto outros ainda esto sendo baixados. As filas limitadas seguram os estgios mais rpidos
+ * quando um estgio posterior no acompanha, sem acumular itens em memria.
+ * Jars do tipo {@link JarTypeEnum#JAR_EXPLODED} so gravados e tambm extrados no diretrio onde ficam.
+ * Exemplo de utilizao com instalao em duas fases:
+ * <pre>
+ *   StagedInstall install = new StagedInstall("c:\\unimed\\app");
+ *   File staging = install.prepare(true);
+ *   UpdatePipeline pipeline = new UpdatePipeline("c:\\unimed\\app", "http://servidor/atualizacao", remoteProperties)
+ *       .installTo(staging.getAbsolutePath());
+ *   pipeline.run();
+ *   if(pipeline.getFailures().isEmpty()){
+ *     install.activate();
+ *   }
+ * </pre>
+ */
+public class UpdatePipeline {
+
+	private static final Logger logger = Logger.getLogger(UpdatePipeline.class);
+
+	private final String rootFolder;
+
+	private final String remoteTargetFolder;
+
+	private final Map<String, JarVersion> remoteVersions;
+
+	private final JarUtils jarUtils = new JarUtils();
+
+	private String installFolder;
+
+	private File downloadFolder;
+
+	private ExclusionMatcher exclusions = ExclusionMatcher.NONE;
+
+	private int downloadThreads = 4;
+
+	private int queueCapacity = 64;
+
+	private ContentStore contentStore;
+
+	private final List<StageReport> stageReports = new ArrayList<StageReport>();
+
+	private final List<UpdateItem> installed = Collections.synchronizedList(new ArrayList<UpdateItem>());
+
+	private final List<UpdateItem> failures = Collections.synchronizedList(new ArrayList<UpdateItem>());
+
+	private volatile Throwable fatal;
+
+	/**
+	 * @param rootFolder diretrio com os jars instalados
+	 * @param remoteTargetFolder URL do diretrio remoto com os jars, na mesma estrutura de rootFolder
+	 * @param remoteProperties verses remotas no formato lido por {@link JarUtils#getJarVersions(Properties)}
+	 */
+	public UpdatePipeline(String rootFolder, String remoteTargetFolder, Properties remoteProperties){
+		if(rootFolder == null){
+			throw new IllegalArgumentException("Parameter rootFolder cannot be null.");
+		}
+		if(remoteTargetFolder == null){
+			throw new IllegalArgumentException("Parameter remoteTargetFolder cannot be null.");
+		}
+		this.rootFolder = new File(rootFolder).getAbsolutePath();
+		this.remoteTargetFolder = remoteTargetFolder;
+		this.remoteVersions = this.jarUtils.getJarVersions(remoteProperties);
+		this.installFolder = this.rootFolder;
+	}
+
+	/**
+	 * @param installFolder diretrio onde os jars atualizados so gravados, por padro o prprio rootFolder
+	 * @return a instancia de UpdatePipeline
+	 */
+	public UpdatePipeline installTo(String installFolder){
+		if(installFolder == null){
+			throw new IllegalArgumentException("Parameter installFolder cannot be null.");
+		}
+		this.installFolder = installFolder;
+		return this;
+	}
+
+	/**
+	 * @param downloadFolder diretrio dos downloads, por padro um diretrio temporrio removido ao final
+	 * @return a instancia de UpdatePipeline
+	 */
+	public UpdatePipeline downloadTo(String downloadFolder){
+		this.downloadFolder = downloadFolder == null ? null : new File(downloadFolder);
+		return this;
+	}
+
+	public UpdatePipeline exclude(ExclusionMatcher exclusions){
+		this.exclusions = exclusions == null ? ExclusionMatcher.NONE : exclusions;
+		return this;
+	}
+
+	public UpdatePipeline downloadThreads(int downloadThreads){
+		if(downloadThreads <= 0){
+			throw new IllegalArgumentException("Parameter downloadThreads must be greater than zero.");
+		}
+		this.downloadThreads = downloadThreads;
+		return this;
+	}
+
+	/**
+	 * @param queueCapacity quantidade mxima de itens aguardando em cada fila
+	 * @return a instancia de UpdatePipeline
+	 */
+	public UpdatePipeline queueCapacity(int queueCapacity){
+		if(queueCapacity <= 0){
+			throw new IllegalArgumentException("Parameter queueCapacity must be greater than zero.");
+		}
+		this.queueCapacity = queueCapacity;
+		return this;
+	}
+
+	/**
+	 * @param contentStore repositrio usado na instalao e extrao, jars iguais aos de outros diretrios de
+	 * instalao viram links em vez de novas cpias; null para copiar
+	 * @return a instancia de UpdatePipeline
+	 */
+	public UpdatePipeline contentStore(ContentStore contentStore){
+		this.contentStore = contentStore;
+		this.jarUtils.contentStore(contentStore);
+		return this;
+	}
+
+	/**
+	 * Executa a atualizao e aguarda o fim de todos os estgios. Falhas em um jar no interrompem os demais,
+	 * ficam disponveis em {@link #getFailures()}.
+	 * @return jars instalados
+	 * @throws IOException caso a varredura ou a preparao dos diretrios falhe
+	 * @throws InterruptedException caso a thread seja interrompida, os estgios tambm so interrompidos
+	 */
+	public List<UpdateItem> run() throws IOException, InterruptedException {
+		boolean temporaryDownloadFolder = this.downloadFolder == null;
+		final File downloads = temporaryDownloadFolder ? Files.createTempDirectory("urei-update").toFile() : this.downloadFolder;
+		this.stageReports.clear();
+		this.installed.clear();
+		this.failures.clear();
+		this.fatal = null;
+
+		BlockingQueue<UpdateItem> diffQueue = new ArrayBlockingQueue<UpdateItem>(this.queueCapacity);
+		BlockingQueue<UpdateItem> downloadQueue = new ArrayBlockingQueue<UpdateItem>(this.queueCapacity);
+		BlockingQueue<UpdateItem> verifyQueue = new ArrayBlockingQueue<UpdateItem>(this.queueCapacity);
+		BlockingQueue<UpdateItem> installQueue = new ArrayBlockingQueue<UpdateItem>(this.queueCapacity);
+		StageReport scanReport = new StageReport("varredura", 1, null);
+		StageReport diffReport = new StageReport("comparao", 1, diffQueue);
+		StageReport downloadReport = new StageReport("download", this.downloadThreads, downloadQueue);
+		StageReport verifyReport = new StageReport("verificao", 1, verifyQueue);
+		StageReport installReport = new StageReport("instalao", 1, installQueue);
+		this.stageReports.addAll(Arrays.asList(scanReport, diffReport, downloadReport, verifyReport, installReport));
+
+		List<Thread> threads = new ArrayList<Thread>();
+		threads.add(new Thread(new ScanStage(scanReport, diffQueue, diffReport), "UpdatePipeline-varredura"));
+		threads.add(new Thread(new DiffStage(diffReport, diffQueue, downloadQueue, downloadReport), "UpdatePipeline-comparacao"));
+		AtomicInteger downloadWorkers = new AtomicInteger(this.downloadThreads);
+		for(int i = 0; i < this.downloadThreads; i++){
+			threads.add(new Thread(new DownloadStage(downloadReport, downloadQueue, verifyQueue, verifyReport, downloadWorkers, downloads), "UpdatePipeline-download-" + i));
+		}
+		threads.add(new Thread(new VerifyStage(verifyReport, verifyQueue, installQueue, installReport, downloads), "UpdatePipeline-verificacao"));
+		threads.add(new Thread(new InstallStage(installReport, installQueue), "UpdatePipeline-instalacao"));
+		for(Thread thread : threads){
+			thread.setDaemon(true);
+			thread.start();
+		}
+		try {
+			for(Thread thread : threads){
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			for(Thread thread : threads){
+				thread.interrupt();
+			}
+			throw e;
+		} finally {
+			if(temporaryDownloadFolder){
+				StagedInstall.deleteTree(downloads.toPath());
+			}
+		}
+		for(StageReport report : this.stageReports){
+			logger.info("Atualizao - " + report);
+		}
+		if(this.fatal instanceof Error){
+			throw (Error) this.fatal;
+		}
+		if(this.fatal != null){
+			throw this.fatal instanceof IOException ? (IOException) this.fatal : new IOException(this.fatal);
+		}
+		return new ArrayList<UpdateItem>(this.installed);
+	}
+
+	/**
+	 * @return jars que no puderam ser atualizados, com o problema em {@link UpdateItem#getError()}
+	 */
+	public List<UpdateItem> getFailures() {
+		return new ArrayList<UpdateItem>(this.failures);
+	}
+
+	/**
+	 * @return tempo e fila de cada estgio, na ordem do fluxo, atualizados durante a execuo
+	 */
+	public List<StageReport> getStageReports() {
+		return Collections.unmodifiableList(this.stageReports);
+	}
+
+	private void fail(UpdateItem item, Exception e) {
+		item.setError(e);
+		this.failures.add(item);
+		logger.error("Falha ao atualizar '" + item.getKey() + "': " + e.getClass().getName() + ":" + e.getMessage());
+	}
+
+	/**
+	 * Estgio com uma ou mais threads consumindo a mesma fila. A ltima thread a terminar
+	 * chama {@link #finish()} e sinaliza o fim para o prximo estgio, inclusive quando o estgio falha.
+	 */
+	private abstract class Stage implements Runnable {
+
+		private final StageReport report;
+
+		private final BlockingQueue<UpdateItem> input;
+
+		private final BlockingQueue<UpdateItem> output;
+
+		private final StageReport outputReport;
+
+		private final AtomicInteger workers;
+
+		Stage(StageReport report, BlockingQueue<UpdateItem> input, BlockingQueue<UpdateItem> output, StageReport outputReport, AtomicInteger workers) {
+			this.report = report;
+			this.input = input;
+			this.output = output;
+			this.outputReport = outputReport;
+			this.workers = workers;
+		}
+
+		@Override
+		public void run() {
+			try {
+				work();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Throwable e) {
+				fatal = e;
+				logger.error("Erro no estgio de " + this.report.getName() + " da atualizao: " + e.getClass().getName() + ":" + e.getMessage());
+				discard();
+			} finally {
+				//interrompido pelo run() da atualizao, que j no espera o fim dos estgios
+				if(!Thread.currentThread().isInterrupted()){
+					try {
+						finishLast();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Esvazia a fila de entrada aps uma falha, para que o estgio anterior no fique bloqueado com a fila cheia.
+		 */
+		private void discard() {
+			if(this.input == null){
+				return;
+			}
+			try {
+				while(this.input.take() != UpdateItem.END){
+					//item descartado, a atualizao termina com erro
+				}
+				this.input.put(UpdateItem.END);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		void work() throws Exception {
+			UpdateItem item;
+			while((item = this.input.take()) != UpdateItem.END){
+				long start = System.nanoTime();
+				try {
+					process(item);
+				} catch (Exception e) {
+					fail(item, e);
+					this.report.failed();
+				}
+				this.report.processed(start);
+			}
+			//as demais threads do estgio tambm precisam ver o fim da fila
+			this.input.put(UpdateItem.END);
+		}
+
+		private void finishLast() throws InterruptedException {
+			if(this.workers.decrementAndGet() == 0){
+				try {
+					finish();
+				} catch (Throwable e) {
+					fatal = e;
+					logger.error("Erro ao encerrar o estgio de " + this.report.getName() + " da atualizao: " + e.getClass().getName() + ":" + e.getMessage());
+				}
+				if(this.output != null){
+					this.output.put(UpdateItem.END);
+				}
+			}
+		}
+
+		void process(UpdateItem item) throws Exception {
+		}
+
+		void finish() throws Exception {
+		}
+
+		void emit(UpdateItem item) throws InterruptedException {
+			this.output.put(item);
+			this.outputReport.queued();
+		}
+
+		StageReport getReport() {
+			return report;
+		}
+	}
+
+	private class ScanStage extends Stage {
+
+		ScanStage(StageReport report, BlockingQueue<UpdateItem> output, StageReport outputReport) {
+			super(report, null, output, outputReport, new AtomicInteger(1));
+		}
+
+		@Override
+		void work() throws Exception {
+			FileIterator files = new FindFiles().exclude(exclusions).iterateFiles(rootFolder, ".jar");
+			try {
+				while(files.hasNext()){
+					long start = System.nanoTime();
+					String path = files.next().getAbsolutePath();
+					JarVersion version = null;
+					try {
+						version = jarUtils.getJarVersion(rootFolder, path);
+					} catch (IOException e) {
+						//jar corrompido  tratado como ausente e baixado novamente
+						logger.warn("Problemas ao ler verso de '" + path + "': " + e.getMessage());
+					} catch (IllegalArgumentException e) {
+						logger.warn("Problemas ao ler verso de '" + path + "': " + e.getMessage());
+					}
+					emit(new UpdateItem(path.substring(rootFolder.length() + 1), version));
+					getReport().processed(start);
+				}
+			} finally {
+				files.close();
+			}
+		}
+	}
+
+	private class DiffStage extends Stage {
+
+		private final Set<String> seen = new HashSet<String>();
+
+		DiffStage(StageReport report, BlockingQueue<UpdateItem> input, BlockingQueue<UpdateItem> output, StageReport outputReport) {
+			super(report, input, output, outputReport, new AtomicInteger(1));
+		}
+
+		@Override
+		void process(UpdateItem item) throws Exception {
+			this.seen.add(item.getKey());
+			JarVersion remote = remoteVersions.get(item.getKey());
+			if(remote != null && remote.compareTo(item.getLocalVersion()) > 0){
+				item.setRemoteVersion(remote);
+				emit(item);
+			}
+		}
+
+		/**
+		 * Jars remotos que no existem localmente s so conhecidos ao fim da varredura.
+		 */
+		@Override
+		void finish() throws Exception {
+			for(Entry<String, JarVersion> remote : remoteVersions.entrySet()){
+				if(!this.seen.contains(remote.getKey())){
+					UpdateItem item = new UpdateItem(remote.getKey(), null);
+					item.setRemoteVersion(remote.getValue());
+					emit(item);
+				}
+			}
+		}
+	}
+
+	private class DownloadStage extends Stage {
+
+		private final File downloads;
+
+		DownloadStage(StageReport report, BlockingQueue<UpdateItem> input, BlockingQueue<UpdateItem> output, StageReport outputReport, AtomicInteger workers, File downloads) {
+			super(report, input, output, outputReport, workers);
+			this.downloads = downloads;
+		}
+
+		@Override
+		void process(UpdateItem item) throws Exception {
+			File target = new File(this.downloads, item.getKey());
+			Files.deleteIfExists(target.toPath());
+			DownloadFile downloadFile = new DownloadFile(new Output<Integer>() {
+				@Override
+				public void output(Integer output) {
+				}
+			}, remoteTargetFolder);
+			downloadFile.download(item.getKey().replace(File.separatorChar, '/'), this.downloads.getAbsolutePath());
+			if(!target.isFile()){
+				throw new IOException("No foi possvel baixar '" + item.getKey() + "' de '" + remoteTargetFolder + "'");
+			}
+			item.setDownloadedFile(target);
+			emit(item);
+		}
+	}
+
+	private class VerifyStage extends Stage {
+
+		private final File downloads;
+
+		VerifyStage(StageReport report, BlockingQueue<UpdateItem> input, BlockingQueue<UpdateItem> output, StageReport outputReport, File downloads) {
+			super(report, input, output, outputReport, new AtomicInteger(1));
+			this.downloads = downloads;
+		}
+
+		@Override
+		void process(UpdateItem item) throws Exception {
+			JarVersion downloaded = jarUtils.getJarVersion(this.downloads.getAbsolutePath(), item.getDownloadedFile().getAbsolutePath());
+			if(downloaded == null || downloaded.compareTo(item.getRemoteVersion()) != 0){
+				throw new IOException("Verso baixada '" + downloaded + "' difere da esperada '" + item.getRemoteVersion() + "'");
+			}
+			emit(item);
+		}
+	}
+
+	private class InstallStage extends Stage {
+
+		InstallStage(StageReport report, BlockingQueue<UpdateItem> input) {
+			super(report, input, null, null, new AtomicInteger(1));
+		}
+
+		@Override
+		void process(UpdateItem item) throws Exception {
+			File target = new File(installFolder, item.getKey());
+			Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+			if(contentStore != null){
+				contentStore.install(item.getDownloadedFile().toPath(), target.toPath());
+			} else {
+				Path temp = target.toPath().resolveSibling(target.getName() + ".tmp");
+				Files.copy(item.getDownloadedFile().toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+				ReplacingOutputStream.replace(temp, target.toPath());
+			}
+			if(item.getRemoteVersion().getJarTypeEnum() == JarTypeEnum.JAR_EXPLODED){
+				jarUtils.extractFilesStrict(target.getAbsolutePath(), target.getAbsoluteFile().getParent());
+			}
+			Files.deleteIfExists(item.getDownloadedFile().toPath());
+			item.setInstalledFile(target);
+			installed.add(item);
+		}
+	}
+}
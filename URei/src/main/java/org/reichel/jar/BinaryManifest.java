@@ -0,0 +1,420 @@
+package org.reichel.jar;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+import org.reichel.file.ReplacingOutputStream;
+
+/**
+ * Manifesto de verses remotas em formato binrio, alternativa ao arquivo properties lido por
+ * {@link JarUtils#getJarVersions(Properties)}.
+ * O arquivo pode ser mapeado em memria e consultado por busca binria sem ler todas as entradas:
+ * <pre>
+ *   cabealho: magic (int), verso (int), quantidade (int), incio dos caminhos (int), tamanho dos caminhos (int)
+ *   registros: um por jar, ordenados pelo caminho em UTF-8, 24 bytes cada
+ *              incio do caminho (int), tamanho do caminho (int), verso compactada (long), CRC-32 (int), tipo (byte), 3 bytes livres
+ *   caminhos:  caminhos relativos em UTF-8 separados por '/'
+ * </pre>
+ * A verso compactada guarda major, minor e maintenance em 21 bits cada, de forma que a comparao dos valores
+ * compactados  a mesma de {@link JarVersion#compareTo(JarVersion)}.
+ * Exemplo de utilizao:
+ * <pre>
+ *   BinaryManifest.convert(remoteProperties, new File("c:\\atualizacao"), new File("c:\\atualizacao\\versions.bin"));
+ *   ...
+ *   BinaryManifest manifest = BinaryManifest.open(new File("cache\\versions.bin"));
+ *   if(manifest.isNewer("lib\\core.jar", localVersion)){
+ *     ...
+ *   }
+ * </pre>
+ */
+public class BinaryManifest {
+
+	private static final Logger logger = Logger.getLogger(BinaryManifest.class);
+
+	private static final int MAGIC = 0x5552454D;
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 20;
+
+	private static final int RECORD_SIZE = 24;
+
+	private static final int VERSION_BITS = 21;
+
+	private static final int VERSION_MAX = (1 << VERSION_BITS) - 1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buffer;
+
+	private final int count;
+
+	private final int stringsOffset;
+
+	private final int stringsLength;
+
+	private BinaryManifest(ByteBuffer buffer, String source) throws IOException {
+		if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC){
+			throw new IOException("'" + source + "' no  um manifesto de verses.");
+		}
+		if(buffer.getInt(4) != VERSION){
+			throw new IOException("Manifesto de verses '" + source + "' na verso " + buffer.getInt(4) + ", esperado " + VERSION + ".");
+		}
+		this.buffer = buffer;
+		this.count = buffer.getInt(8);
+		this.stringsOffset = buffer.getInt(12);
+		this.stringsLength = buffer.getInt(16);
+		if(this.count < 0 || this.stringsOffset != HEADER_SIZE + (long) this.count * RECORD_SIZE
+				|| this.stringsLength < 0 || (long) this.stringsOffset + this.stringsLength > buffer.capacity()){
+			throw new IOException("Manifesto de verses '" + source + "' corrompido.");
+		}
+		//os registros s so conferidos quando lidos, a abertura no percorre o arquivo
+	}
+
+	/**
+	 * Mapeia o arquivo em memria somente leitura. O mapeamento permanece vlido aps o fechamento do arquivo.
+	 * @param file manifesto gravado por {@link #write(Map, File, OutputStream)} ou {@link #convert(Properties, File, File)}
+	 * @return manifesto pronto para consulta
+	 * @throws IOException se o arquivo no puder ser lido ou no for um manifesto vlido
+	 */
+	public static BinaryManifest open(File file) throws IOException {
+		if(file == null){
+			throw new IllegalArgumentException("Parameter file cannot be null.");
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return new BinaryManifest(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.getPath());
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @param bytes contedo do manifesto, ex: baixado com {@link InputStream#readAllBytes()}
+	 */
+	public static BinaryManifest wrap(byte[] bytes) throws IOException {
+		if(bytes == null){
+			throw new IllegalArgumentException("Parameter bytes cannot be null.");
+		}
+		return new BinaryManifest(ByteBuffer.wrap(bytes).asReadOnlyBuffer(), "byte[" + bytes.length + "]");
+	}
+
+	public int size(){
+		return this.count;
+	}
+
+	/**
+	 * @param relativePath caminho relativo separado por '/' ou '\\', ex: "lib\\core.jar"
+	 * @return posio da entrada ou um valor negativo se o caminho no estiver no manifesto
+	 * @throws IllegalStateException se uma das entradas visitadas pela busca estiver corrompida
+	 */
+	public int indexOf(String relativePath){
+		if(relativePath == null){
+			throw new IllegalArgumentException("Parameter relativePath cannot be null.");
+		}
+		byte[] key = normalize(relativePath).getBytes(UTF8);
+		int low = 0;
+		int high = this.count - 1;
+		while(low <= high){
+			int middle = (low + high) >>> 1;
+			int compare = compare(middle, key);
+			if(compare < 0){
+				low = middle + 1;
+			} else if(compare > 0){
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * @return verso remota ou null se o caminho no estiver no manifesto
+	 */
+	public JarVersion get(String relativePath){
+		int index = indexOf(relativePath);
+		return index < 0 ? null : getJarVersion(index);
+	}
+
+	/**
+	 * Compara a verso remota com a local sem criar objetos, exceto quando a verso local no cabe em 21 bits por componente.
+	 * @param localVersion verso instalada, null se o jar no existir localmente
+	 * @return true se o caminho estiver no manifesto com verso maior que a local
+	 */
+	public boolean isNewer(String relativePath, JarVersion localVersion){
+		int index = indexOf(relativePath);
+		if(index < 0){
+			return false;
+		}
+		if(localVersion == null){
+			return true;
+		}
+		//verso local alm de 21 bits por componente no pode ser compactada
+		return fits(localVersion) ? getPackedVersion(index) > pack(localVersion) : getJarVersion(index).compareTo(localVersion) > 0;
+	}
+
+	public String getPath(int index){
+		int record = record(index);
+		int start = pathStart(index, record);
+		byte[] path = new byte[this.buffer.getInt(record + 4)];
+		for(int i = 0; i < path.length; i++){
+			path[i] = this.buffer.get(start + i);
+		}
+		return new String(path, UTF8).replace('/', File.separatorChar);
+	}
+
+	public long getPackedVersion(int index){
+		return this.buffer.getLong(record(index) + 8);
+	}
+
+	/**
+	 * @return CRC-32 do jar ou zero se desconhecido
+	 */
+	public long getChecksum(int index){
+		return this.buffer.getInt(record(index) + 16) & 0xFFFFFFFFL;
+	}
+
+	public JarTypeEnum getJarTypeEnum(int index){
+		int type = this.buffer.get(record(index) + 20);
+		JarTypeEnum[] types = JarTypeEnum.values();
+		if(type < 0 || type >= types.length){
+			throw new IllegalStateException("Tipo " + type + " desconhecido na entrada " + index + " do manifesto de verses.");
+		}
+		return types[type];
+	}
+
+	/**
+	 * @return verso com fileName igual ao caminho relativo, assim como em {@link JarUtils#getJarVersions(Properties)}
+	 */
+	public JarVersion getJarVersion(int index){
+		long packed = getPackedVersion(index);
+		return new JarVersion((int) (packed >>> (2 * VERSION_BITS)) & VERSION_MAX, (int) (packed >>> VERSION_BITS) & VERSION_MAX,
+				(int) packed & VERSION_MAX, getPath(index), getJarTypeEnum(index));
+	}
+
+	/**
+	 * L todas as entradas, para quem precisa do mesmo resultado de {@link JarUtils#getJarVersions(Properties)}.
+	 * @return {@link JarVersionMap} com todas as entradas
+	 */
+	public Map<String, JarVersion> toMap(){
+		Map<String, JarVersion> result = new JarVersionMap(this.count);
+		for(int i = 0; i < this.count; i++){
+			JarVersion jarVersion = getJarVersion(i);
+			result.put(jarVersion.getFileName(), jarVersion);
+		}
+		return result;
+	}
+
+	private int record(int index){
+		if(index < 0 || index >= this.count){
+			throw new IndexOutOfBoundsException("Entrada " + index + " fora do manifesto de verses com " + this.count + " entradas.");
+		}
+		return HEADER_SIZE + index * RECORD_SIZE;
+	}
+
+	/**
+	 * @return posio do caminho da entrada no buffer
+	 * @throws IllegalStateException se o caminho estiver fora da rea de caminhos
+	 */
+	private int pathStart(int index, int record){
+		int start = this.buffer.getInt(record);
+		int length = this.buffer.getInt(record + 4);
+		if(start < 0 || length < 0 || (long) start + length > this.stringsLength){
+			throw new IllegalStateException("Caminho da entrada " + index + " fora da rea de caminhos do manifesto de verses, incio " + start + " e tamanho " + length + ".");
+		}
+		return this.stringsOffset + start;
+	}
+
+	private int compare(int index, byte[] key){
+		int record = HEADER_SIZE + index * RECORD_SIZE;
+		int start = pathStart(index, record);
+		int length = this.buffer.getInt(record + 4);
+		int common = Math.min(length, key.length);
+		for(int i = 0; i < common; i++){
+			int compare = (this.buffer.get(start + i) & 0xFF) - (key[i] & 0xFF);
+			if(compare != 0){
+				return compare;
+			}
+		}
+		return length - key.length;
+	}
+
+	private static String normalize(String relativePath){
+		return relativePath.replace('\\', '/');
+	}
+
+	/**
+	 * @throws IllegalArgumentException se major, minor ou maintenance no couberem em 21 bits
+	 */
+	public static long pack(JarVersion jarVersion){
+		if(!fits(jarVersion)){
+			throw new IllegalArgumentException("Verso '" + jarVersion + "' de '" + jarVersion.getFileName() + "' excede o limite de " + VERSION_MAX + " por componente.");
+		}
+		return ((long) jarVersion.getMajor() << (2 * VERSION_BITS)) | ((long) jarVersion.getMinor() << VERSION_BITS) | jarVersion.getMaintenance();
+	}
+
+	private static boolean fits(JarVersion jarVersion){
+		return jarVersion.getMajor() <= VERSION_MAX && jarVersion.getMinor() <= VERSION_MAX && jarVersion.getMaintenance() <= VERSION_MAX;
+	}
+
+	/**
+	 * @return CRC-32 do contedo do arquivo
+	 */
+	public static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream is = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int bytes;
+			while((bytes = is.read(buffer)) != -1){
+				crc.update(buffer, 0, bytes);
+			}
+		} finally {
+			is.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Grava o manifesto.
+	 * @param jarVersions verses indexadas pelo caminho relativo, ex: resultado de {@link JarUtils#getJarVersions(Properties)}
+	 * @param rootFolder diretrio com os jars para o clculo do CRC-32, null grava CRC-32 zero
+	 * @param out destino, no  fechado
+	 */
+	public static void write(Map<String, JarVersion> jarVersions, File rootFolder, OutputStream out) throws IOException {
+		if(jarVersions == null){
+			throw new IllegalArgumentException("Parameter jarVersions cannot be null.");
+		}
+		if(out == null){
+			throw new IllegalArgumentException("Parameter out cannot be null.");
+		}
+		List<Entry<byte[], JarVersion>> entries = new ArrayList<Entry<byte[], JarVersion>>(jarVersions.size());
+		long stringsLength = 0;
+		for(Entry<String, JarVersion> entry : jarVersions.entrySet()){
+			byte[] path = normalize(entry.getKey()).getBytes(UTF8);
+			entries.add(new SimpleImmutableEntry<byte[], JarVersion>(path, entry.getValue()));
+			stringsLength += path.length;
+		}
+		if(HEADER_SIZE + (long) entries.size() * RECORD_SIZE + stringsLength > Integer.MAX_VALUE){
+			throw new IOException("Manifesto de verses com " + entries.size() + " entradas e " + stringsLength + " bytes de caminhos excede o limite de " + Integer.MAX_VALUE + " bytes.");
+		}
+		Collections.sort(entries, new Comparator<Entry<byte[], JarVersion>>() {
+			@Override
+			public int compare(Entry<byte[], JarVersion> o1, Entry<byte[], JarVersion> o2) {
+				byte[] key1 = o1.getKey();
+				byte[] key2 = o2.getKey();
+				for(int i = 0; i < Math.min(key1.length, key2.length); i++){
+					int compare = (key1[i] & 0xFF) - (key2[i] & 0xFF);
+					if(compare != 0){
+						return compare;
+					}
+				}
+				return key1.length - key2.length;
+			}
+		});
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		dos.writeInt(entries.size());
+		dos.writeInt(HEADER_SIZE + entries.size() * RECORD_SIZE);
+		dos.writeInt((int) stringsLength);
+		int offset = 0;
+		for(Entry<byte[], JarVersion> entry : entries){
+			byte[] path = entry.getKey();
+			JarVersion jarVersion = entry.getValue();
+			dos.writeInt(offset);
+			dos.writeInt(path.length);
+			dos.writeLong(pack(jarVersion));
+			dos.writeInt((int) checksum(rootFolder, path));
+			dos.writeByte(jarVersion.getJarTypeEnum().ordinal());
+			dos.write(new byte[3]);
+			offset += path.length;
+		}
+		for(Entry<byte[], JarVersion> entry : entries){
+			dos.write(entry.getKey());
+		}
+		dos.flush();
+	}
+
+	private static long checksum(File rootFolder, byte[] path) throws IOException {
+		if(rootFolder == null){
+			return 0;
+		}
+		File file = new File(rootFolder, new String(path, UTF8).replace('/', File.separatorChar));
+		if(!file.isFile()){
+			logger.warn("Arquivo '" + file.getAbsolutePath() + "' no encontrado, CRC-32 gravado como zero.");
+			return 0;
+		}
+		return checksum(file);
+	}
+
+	/**
+	 * Converte o manifesto do formato properties. A gravao  feita em um arquivo temporrio que substitui o destino.
+	 * @param properties verses no formato lido por {@link JarUtils#getJarVersions(Properties)}
+	 * @param rootFolder diretrio com os jars para o clculo do CRC-32, null grava CRC-32 zero
+	 * @param target arquivo do manifesto binrio
+	 */
+	public static void convert(Properties properties, File rootFolder, File target) throws IOException {
+		if(target == null){
+			throw new IllegalArgumentException("Parameter target cannot be null.");
+		}
+		Map<String, JarVersion> jarVersions = new JarUtils().getJarVersions(properties);
+		File parent = target.getAbsoluteFile().getParentFile();
+		if(!parent.exists()){
+			parent.mkdirs();
+		}
+		File temp = File.createTempFile(target.getName(), ".tmp", parent);
+		try {
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				write(jarVersions, rootFolder, out);
+			} finally {
+				out.close();
+			}
+			ReplacingOutputStream.replace(temp.toPath(), target.toPath());
+		} finally {
+			if(temp.exists() && !temp.delete()){
+				logger.error("Problemas ao liberar recursos: no foi possvel apagar '" + temp.getAbsolutePath() + "'");
+			}
+		}
+	}
+
+	/**
+	 * Conversor de linha de comando: BinaryManifest arquivo.properties arquivo.bin [diretrio dos jars]
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2){
+			System.out.println("Uso: BinaryManifest arquivo.properties arquivo.bin [diretrio dos jars]");
+			return;
+		}
+		Properties properties = new Properties();
+		InputStream is = new FileInputStream(args[0]);
+		try {
+			properties.load(is);
+		} finally {
+			is.close();
+		}
+		convert(properties, args.length > 2 ? new File(args[2]) : null, new File(args[1]));
+	}
+}
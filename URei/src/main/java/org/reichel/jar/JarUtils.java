@@ -1,12 +1,12 @@
 package org.reichel.jar;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
@@ -16,6 +16,16 @@ import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
 import org.apache.log4j.Logger;
+import org.reichel.file.ContentStore;
+import org.reichel.file.DirectoryCache;
+import org.reichel.file.ExclusionMatcher;
+import org.reichel.file.FindFiles;
+import org.reichel.file.ReplacingOutputStream;
+import org.reichel.jfr.Events;
+import org.reichel.jfr.Span;
+import org.reichel.metrics.Counter;
+import org.reichel.metrics.Histogram;
+import org.reichel.metrics.MetricsRegistry;
 
 /**
  * Classe utilitria para lidar com arquivos jar.
@@ -27,11 +37,47 @@ import org.apache.log4j.Logger;
 public class JarUtils {
 
 	private static final Logger logger = Logger.getLogger(JarUtils.class);
+
+	private static final Counter jarsScanned = MetricsRegistry.getDefault().counter("jar.scanned");
+
+	private static final Histogram scanRate = MetricsRegistry.getDefault().histogram("jar.scan.rate");
+
+	private static final Histogram manifestTime = MetricsRegistry.getDefault().histogram("jar.manifest.time");
+
+	private static final Counter extractedEntries = MetricsRegistry.getDefault().counter("jar.extract.entries");
+
+	private static final Counter extractedBytes = MetricsRegistry.getDefault().counter("jar.extract.bytes");
 	
 	public static String PROPERTIES_VERSION = ".version";
 	public static String PROPERTIES_FILENAME = ".filename";
 	public static String PROPERTIES_PATH = ".path";
 	public static String PROPERTIES_TYPE = ".type";
+
+	private DirectoryCache directoryCache = null;
+
+	private ContentStore contentStore = null;
+
+	/**
+	 * Faz com que {@link #getJarVersions(String, Map, ExclusionMatcher)} reaproveite as listagens
+	 * de diretrios no alterados desde a ltima varredura.
+	 * @param directoryCache cache de listagens, null l todos os diretrios
+	 * @return a instancia de JarUtils
+	 */
+	public JarUtils directoryCache(DirectoryCache directoryCache){
+		this.directoryCache = directoryCache;
+		return this;
+	}
+
+	/**
+	 * Faz com que {@link #extractFiles(String, String, boolean)} grave os arquivos atravs do repositrio:
+	 * arquivos idnticos aos de outros diretrios de instalao viram links, sem gravar novamente os bytes.
+	 * @param contentStore repositrio de contedo, null grava uma cpia completa em cada diretrio
+	 * @return a instancia de JarUtils
+	 */
+	public JarUtils contentStore(ContentStore contentStore){
+		this.contentStore = contentStore;
+		return this;
+	}
 	
 	/**
 	 * Extrai todos os arquivos de um arquivo jar para um diretrio.
@@ -76,6 +122,26 @@ public class JarUtils {
 	 * @throws IOException quando houver problemas ao ler e/ou escrever arquivos
 	 */
 	public void extractFiles(String jarFilePath, String targetFolder, boolean extractMetaInf) {
+		try {
+			extract(jarFilePath, targetFolder, extractMetaInf, false);
+		} catch (IOException e) {
+			//no ocorre, no modo tolerante os erros so apenas registrados no log
+			logger.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * Igual a {@link #extractFiles(String, String)}, mas interrompe a extrao no primeiro erro em vez de registr-lo
+	 * no log e seguir adiante. Indicado para instalaes, onde uma extrao incompleta no pode ser ativada.
+	 * @param jarFilePath caminho do arquivo jar a ser extrado ex: config\ambienteconfig.jar
+	 * @param targetFolder caminho do diretrio raiz onde os arquivos sero extrados ex: config\extract
+	 * @throws IOException na primeira falha ao ler o jar ou gravar um arquivo, os arquivos j extrados permanecem
+	 */
+	public void extractFilesStrict(String jarFilePath, String targetFolder) throws IOException {
+		extract(jarFilePath, targetFolder, true, true);
+	}
+
+	private void extract(String jarFilePath, String targetFolder, boolean extractMetaInf, boolean strict) throws IOException {
 		if(jarFilePath == null || "".equals(jarFilePath)){
 			throw new IllegalArgumentException("Parametro jarFilePath no pode ser vazio ou nulo.");
 		}
@@ -87,34 +153,63 @@ public class JarUtils {
 			targetFolder += File.separatorChar;
 		}
 		
+		Span event = Events.begin(Events.JAR_EXTRACT);
+		boolean recording = event.isEnabled();
+		int extractedEntries = 0;
+		long extractedBytes = 0;
 		File targetFile = null;
 		JarFile jarFile = null;
 		try {
 			jarFile = new JarFile(new File(jarFilePath));
 		} catch (IOException e) {
-			logger.error("Problemas ao criar JarFile: " + jarFilePath + " " + e.getMessage());
+			fail(strict, "Problemas ao criar JarFile: " + jarFilePath, e);
 		}
 		if(jarFile != null){
-			Enumeration<JarEntry> jarEntries = jarFile.entries();
-			while(jarEntries.hasMoreElements()){
-				JarEntry jarEntry = jarEntries.nextElement();
-				String name = jarEntry.getName();
-				if(!name.contains("META-INF") || extractMetaInf){
-					targetFile = new File(targetFolder + name);
-					createDirectories(targetFolder, targetFile, jarEntry, name);
-					doExtractFile(jarFile, jarEntry, targetFile);
+			try {
+				Enumeration<JarEntry> jarEntries = jarFile.entries();
+				while(jarEntries.hasMoreElements()){
+					JarEntry jarEntry = jarEntries.nextElement();
+					String name = jarEntry.getName();
+					if(!name.contains("META-INF") || extractMetaInf){
+						targetFile = new File(targetFolder + name);
+						try {
+							createDirectories(targetFolder, targetFile, jarEntry, name);
+						} catch (UnsupportedOperationException e) {
+							if(strict){
+								throw new IOException(e.getMessage(), e);
+							}
+							throw e;
+						}
+						long bytes = doExtractFile(jarFile, jarEntry, targetFile, strict);
+						if(recording && bytes >= 0){
+							extractedEntries++;
+							extractedBytes += bytes;
+						}
+					}
+				}
+			} finally {
+				try {
+					jarFile.close();
+				} catch (IOException e) {
+					logger.error("Problemas ao liberar recursos: " + e.getMessage());
 				}
 			}
 		}
-		if(jarFile != null){
-			try {
-				jarFile.close();
-			} catch (IOException e) {
-				logger.error("Problemas ao liberar recursos: " + e.getMessage());
-			}
+		if(event.shouldCommit()){
+			event.set("path", jarFilePath).set("targetFolder", targetFolder).set("entries", extractedEntries).set("bytes", extractedBytes).commit();
 		}
 	}
 
+	/**
+	 * No modo estrito lana a falha, caso contrrio apenas a registra no log.
+	 */
+	private static void fail(boolean strict, String message, IOException e) throws IOException {
+		if(strict){
+			throw new IOException(message + " " + e.getMessage(), e);
+		}
+		logger.error(message + " " + e.getMessage());
+	}
+
 	/**
 	 * Mtodo para facilitar a recuperar a verso de um jar.
 	 * @param jarFilePath caminho do arquivo jar
@@ -125,9 +220,12 @@ public class JarUtils {
 		if(jarFilePath == null || "".equals(jarFilePath)){
 			throw new IllegalArgumentException("Parametro jarFilePath no pode ser nulo.");
 		}
-		String jarAttributeVersion = getJarAttribute(jarFilePath, "Implementation-Version");
-		String jarType = getJarAttribute(jarFilePath, "Jar-Type");
+		Span event = Events.begin(Events.JAR_VERSION);
+		String[] attributes = getJarAttributes(jarFilePath, "Implementation-Version", "Jar-Type");
+		String jarAttributeVersion = attributes[0];
+		String jarType = attributes[1];
 		JarTypeEnum jarTypeEnum = (jarType == null || "".equals(jarType))? JarTypeEnum.JAR : JarTypeEnum.fromType(jarType);
+		commit(event, jarFilePath, jarAttributeVersion);
 		return jarAttributeVersion != null? new JarVersion(jarAttributeVersion, getFileName(jarFilePath), jarTypeEnum) : null;
 	}
 
@@ -140,11 +238,20 @@ public class JarUtils {
 		}
 		
 		String relativeJarFilePath = jarFilePath.substring(rootFolder.length() + 1);
-		String jarAttributeVersion = getJarAttribute(jarFilePath, "Implementation-Version");
-		String jarType = getJarAttribute(jarFilePath, "Jar-Type");
+		Span event = Events.begin(Events.JAR_VERSION);
+		String[] attributes = getJarAttributes(jarFilePath, "Implementation-Version", "Jar-Type");
+		String jarAttributeVersion = attributes[0];
+		String jarType = attributes[1];
 		JarTypeEnum jarTypeEnum = (jarType == null || "".equals(jarType))? JarTypeEnum.JAR : JarTypeEnum.fromType(jarType);
+		commit(event, jarFilePath, jarAttributeVersion);
 		return jarAttributeVersion != null? new JarVersion(jarAttributeVersion, relativeJarFilePath, jarTypeEnum) : null;
 	}
+
+	private void commit(Span event, String jarFilePath, String version) {
+		if(event.shouldCommit()){
+			event.set("path", jarFilePath).set("version", version).commit();
+		}
+	}
 	
 	private String getFileName(String filePath) {
 		if(filePath == null || "".equals(filePath)){
@@ -161,62 +268,124 @@ public class JarUtils {
 	 * @throws IOException se algum problema ocorrer ao ler o arquivo jar.
 	 */
 	public String getJarAttribute(String jarFilePath, String attribute) throws IOException{
+		return getJarAttributes(jarFilePath, attribute)[0];
+	}
+
+	/**
+	 * L vrios atributos do MANIFEST.MF abrindo o arquivo jar uma nica vez.
+	 * O arquivo  fechado antes do retorno para que possa ser apagado ou substitudo em seguida.
+	 * @param jarFilePath caminho do arquivo jar
+	 * @param attributes nomes dos atributos desejados
+	 * @return valores na ordem de attributes, null para os atributos no encontrados
+	 * @throws IOException se algum problema ocorrer ao ler o arquivo jar.
+	 */
+	public String[] getJarAttributes(String jarFilePath, String ... attributes) throws IOException{
+		long start = System.nanoTime();
+		String[] values = new String[attributes.length];
 		JarFile jarFile = new JarFile(jarFilePath);
-		String attributeValue = null;
-		if(jarFile != null){
+		try {
 			Manifest manifest = jarFile.getManifest();
 			if(manifest != null){
 				Attributes mainAttributes = manifest.getMainAttributes();
-				if(mainAttributes != null){
-					attributeValue = mainAttributes.getValue(attribute);
-				}
-				if(attributeValue == null){
-					for(Entry<String, Attributes> att : jarFile.getManifest().getEntries().entrySet()){
-						if((attributeValue = att.getValue().getValue(attribute)) != null){
-							break;
+				for(int i = 0; i < attributes.length; i++){
+					if(mainAttributes != null){
+						values[i] = mainAttributes.getValue(attributes[i]);
+					}
+					if(values[i] == null){
+						for(Entry<String, Attributes> att : manifest.getEntries().entrySet()){
+							if((values[i] = att.getValue().getValue(attributes[i])) != null){
+								break;
+							}
 						}
 					}
 				}
 			}
+		} finally {
+			close(jarFile);
 		}
-		return attributeValue;
+		manifestTime.updateElapsed(start);
+		return values;
 	}
 	
-	private void doExtractFile(JarFile jarFile, JarEntry jarEntry, File targetFile) {
+	/**
+	 * @return bytes gravados ou -1 se o arquivo no foi extrado
+	 */
+	private long doExtractFile(JarFile jarFile, JarEntry jarEntry, File targetFile, boolean strict) throws IOException {
+		if(this.contentStore != null){
+			return doStoreFile(jarFile, jarEntry, targetFile, strict);
+		}
+		if(jarEntry.isDirectory()){
+			return -1;
+		}
 		InputStream is = null;
 		try {
 			is = jarFile.getInputStream(jarEntry);
 		} catch (IOException e) {
-			logger.error("Erro ao pegar inputStream de: " + jarFile.getName() + " " + e.getMessage());
+			fail(strict, "Erro ao pegar inputStream de: " + jarFile.getName(), e);
+			return -1;
 		}
-		FileOutputStream fos = null;
+		ReplacingOutputStream fos = null;
 		try {
-			fos = new FileOutputStream(targetFile);
-		} catch (FileNotFoundException e) {
-			logger.error("Erro ao criar FileOutputStream: " + targetFile + " " + e.getMessage());
+			fos = new ReplacingOutputStream(targetFile.toPath());
+		} catch (IOException e) {
+			close(is);
+			fail(strict, "Erro ao criar arquivo temporrio de: " + targetFile, e);
+			return -1;
 		}
 		byte[] buffer = new byte[4096];
 		int bytesRead = 0;
-		if(is != null && fos != null){
-	        try {
-				while ((bytesRead = is.read(buffer)) != -1) {
-					 fos.write(buffer, 0, bytesRead);
-				}
-			} catch (IOException e) {
-				logger.error("Erro ao ler do inputStream ou escrever no FileOutputStream: " + e.getMessage());
+		long totalBytes = 0;
+		try {
+			while ((bytesRead = is.read(buffer)) != -1) {
+				 fos.write(buffer, 0, bytesRead);
+				 totalBytes += bytesRead;
 			}
+			fos.commit();
+			extractedEntries.increment();
+			extractedBytes.add(totalBytes);
+		} catch (IOException e) {
+			totalBytes = -1;
+			fail(strict, "Erro ao ler do inputStream ou escrever no arquivo: " + targetFile, e);
+		} finally {
+			close(is);
+			close(fos);
 		}
-		if(is != null && fos != null){
-	        try {
-				is.close();
-				fos.flush();
-				fos.close();
+		return totalBytes;
+	}
+	
+	/**
+	 * @return bytes do arquivo ou -1 se o arquivo no foi extrado
+	 */
+	private long doStoreFile(JarFile jarFile, JarEntry jarEntry, File targetFile, boolean strict) throws IOException {
+		if(jarEntry.isDirectory()){
+			return -1;
+		}
+		InputStream is = null;
+		try {
+			is = jarFile.getInputStream(jarEntry);
+			this.contentStore.write(is, targetFile.toPath());
+			long totalBytes = targetFile.length();
+			extractedEntries.increment();
+			extractedBytes.add(totalBytes);
+			return totalBytes;
+		} catch (IOException e) {
+			fail(strict, "Erro ao extrair '" + jarEntry.getName() + "' de " + jarFile.getName() + " pelo repositrio de contedo:", e);
+			return -1;
+		} finally {
+			close(is);
+		}
+	}
+
+	private static void close(Closeable closeable) {
+		if(closeable != null){
+			try {
+				closeable.close();
 			} catch (IOException e) {
 				logger.error("Problemas ao liberar recursos: " + e.getMessage());
 			}
 		}
 	}
-	
+
 	private void createDirectories(String targetFolder, File targetFile, JarEntry jarEntry, String name) {
 		if(jarEntry.isDirectory() && !targetFile.exists()){
 			if(!targetFile.mkdirs()){
@@ -255,44 +424,56 @@ public class JarUtils {
 	 * @see JarUtils#getJarVersion(String)
 	 */
 	public Map<String, JarVersion> getJarVersions(String rootFolder, Map<String,JarVersion> jarVersions) throws IOException{
-		return getJarVersions(rootFolder, rootFolder, jarVersions, (String[]) null);
+		return getJarVersions(rootFolder, jarVersions, ExclusionMatcher.NONE);
 	}
 
+	/**
+	 * @param exceptions diretrios cujo caminho termine com algum destes textos no so percorridos
+	 * @see ExclusionMatcher#fromSuffixes(String...)
+	 */
 	public Map<String, JarVersion> getJarVersions(String rootFolder, Map<String,JarVersion> jarVersions, String ... exceptions) throws IOException{
-		return getJarVersions(rootFolder, rootFolder, jarVersions, exceptions);
+		ExclusionMatcher exclusions = ExclusionMatcher.fromSuffixes(exceptions);
+		if(exclusions.isExcluded(new File(rootFolder).getAbsolutePath(), true)){
+			return jarVersions;
+		}
+		return getJarVersions(rootFolder, jarVersions, exclusions);
 	}
 	
-	private Map<String, JarVersion> getJarVersions(String rootFolder, String targetFolder, Map<String,JarVersion> jarVersions, String... exceptions) throws IOException{
-		File targetFolderFile = new File(targetFolder);
-		File file = null;
-		if(targetFolderFile.exists()){
-			if(targetFolderFile.isDirectory()){
-				if(exceptions == null || exceptions.length == 0 || !isException(targetFolderFile.getAbsolutePath(), exceptions)){
-					for(String filePath : targetFolderFile.list()){
-						file = new File(targetFolderFile.getAbsolutePath() + File.separatorChar + filePath);
-						if(file.exists()){
-							 if(file.isDirectory()){
-								 getJarVersions(rootFolder, file.getAbsolutePath(), jarVersions, exceptions);
-							 } else if(file.getAbsolutePath().toLowerCase().endsWith(".jar")) {
-								 jarVersions.put(file.getAbsolutePath().substring(rootFolder.length() + 1), getJarVersion(rootFolder, file.getAbsolutePath()));
-							 }
-						}
-					}
-				}
-			} else if(targetFolderFile.getAbsolutePath().toLowerCase().endsWith(".jar")){ 
+	/**
+	 * Varre o diretrio em busca de arquivos jar ignorando, sem ler o contedo, os sub-diretrios excludos.
+	 * Exemplo de utilizao:
+	 * <pre>
+	 *   jarUtils.getJarVersions(path, new HashMap&lt;String, JarVersion&gt;(), new ExclusionMatcher(true, ".svn/", "target/"));
+	 * </pre>
+	 * @param rootFolder caminho completo do diretrio
+	 * @param jarVersions instancia de Map&lt;String,JarVersion&gt; a ser populado com as informaes
+	 * @param exclusions regras de excluso no estilo .gitignore, relativas a rootFolder
+	 * @return Map&lt;String,JarVersion&gt com o mapa populado ou vazio se no encontrar arquivos jar
+	 * @throws IOException caso ocorra problema com a manipulao de arquivo
+	 */
+	public Map<String, JarVersion> getJarVersions(String rootFolder, Map<String,JarVersion> jarVersions, ExclusionMatcher exclusions) throws IOException{
+		File targetFolderFile = new File(rootFolder);
+		if(targetFolderFile.isFile()){
+			if(targetFolderFile.getAbsolutePath().toLowerCase().endsWith(".jar")){ 
 				jarVersions.put(targetFolderFile.getAbsolutePath().substring(rootFolder.length() + 1), getJarVersion(rootFolder, targetFolderFile.getAbsolutePath()));
 			}
+			return jarVersions;
 		}
-		return jarVersions;
-	}
-	
-	private boolean isException(String absolutePath, String[] exceptions) {
-		for(String except : exceptions){
-			if(except != null && !"".equals(except) && absolutePath.endsWith(except)){
-				return true;
-			}
+		long start = System.nanoTime();
+		FindFiles findFiles = new FindFiles().exclude(exclusions).cache(this.directoryCache);
+		List<File> jars = findFiles.findFiles(rootFolder, ".jar");
+		for(File file : jars){
+			jarVersions.put(file.getAbsolutePath().substring(rootFolder.length() + 1), getJarVersion(rootFolder, file.getAbsolutePath()));
 		}
-		return false;
+		jarsScanned.add(jars.size());
+		long elapsed = System.nanoTime() - start;
+		if(elapsed > 0 && !jars.isEmpty()){
+			scanRate.update(jars.size() * 1000000000L / elapsed);
+		}
+		if(findFiles.getCacheReport() != null && logger.isDebugEnabled()){
+			logger.debug("Varredura de '" + rootFolder + "'. " + findFiles.getCacheReport());
+		}
+		return jarVersions;
 	}
 
 	public Map<String,JarVersion> getJarVersions(Properties properties){
@@ -45,6 +45,26 @@ public class JarVersion implements Comparable<JarVersion>{
 		this.maintenance = Integer.valueOf(matcher.group(3) == null ? "0": matcher.group(3));
 	}
 
+	/**
+	 * Construtor para verses j decompostas, usado na leitura de formatos binrios sem passar pela expresso regular.
+	 */
+	public JarVersion(int major, int minor, int maintenance, String fileName, JarTypeEnum jarTypeEnum){
+		if(major < 0 || minor < 0 || maintenance < 0){
+			throw new IllegalArgumentException("Verso: '" + major + "." + minor + "." + maintenance + "' no  uma verso vlida, exemplo de verso vlida: 1.5.33");
+		}
+		if(fileName == null || "".equals(fileName)){
+			throw new IllegalArgumentException("Parametro fileName no pode ser nulo.");
+		}
+		if(jarTypeEnum == null){
+			throw new IllegalArgumentException("Parametro jarTypeEnum no pode ser nulo.");
+		}
+		this.fileName = fileName;
+		this.jarTypeEnum = jarTypeEnum;
+		this.major = major;
+		this.minor = minor;
+		this.maintenance = maintenance;
+	}
+
 	public Integer getMajor() {
 		return major;
 	}
@@ -0,0 +1,510 @@
+package org.reichel.jar;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Mapa de caminho relativo para {@link JarVersion} com uso reduzido de memria, para inventrios com milhes de jars.
+ * Os caminhos so divididos em segmentos pelo {@link File#separatorChar}, cada nome de diretrio ou arquivo  guardado
+ * uma nica vez e cada diretrio  um n (pai, segmento). Cada jar ocupa apenas arrays de tipos primitivos:
+ * diretrio, nome, verso compactada ({@link BinaryManifest#pack(JarVersion)}), tipo e hash do caminho.
+ * Caminhos e objetos JarVersion so criados somente quando consultados, a cada consulta. Verses com algum
+ * componente acima de 2097151 (21 bits), que no cabem na verso compactada, so guardadas  parte como objetos.
+ * Pode ser usado no lugar do HashMap, ex:
+ * <pre>
+ *   Map&lt;String, JarVersion&gt; jarVersions = new JarUtils().getJarVersions("c:\\unimed", new JarVersionMap());
+ * </pre>
+ * Assim como o HashMap, no  thread-safe. Chaves nulas no so aceitas; valores nulos so aceitos como no HashMap,
+ * pois {@link JarUtils#getJarVersion(String, String)} retorna null para jars sem 'Implementation-Version'.
+ */
+public class JarVersionMap extends AbstractMap<String, JarVersion> {
+
+	private static final int VERSION_BITS = 21;
+
+	private static final int VERSION_MAX = (1 << VERSION_BITS) - 1;
+
+	private static final int REMOVED = -1;
+
+	/** Tipo das entradas com valor nulo. */
+	private static final byte NO_VERSION = -1;
+
+	private static final JarTypeEnum[] TYPES = JarTypeEnum.values();
+
+	private final List<String> segments = new ArrayList<String>();
+
+	private final Map<String, Integer> segmentIds = new HashMap<String, Integer>();
+
+	/** Ns de diretrio, o n 0  a raiz. */
+	private int[] directoryParent = new int[16];
+
+	private int[] directorySegment = new int[16];
+
+	private int directories = 1;
+
+	/** N + 1 de cada diretrio indexado por (pai, segmento), endereamento aberto com sondagem linear. */
+	private int[] directoryTable = new int[16];
+
+	private int[] entryDirectory;
+
+	private int[] entryName;
+
+	private int[] entryHash;
+
+	private long[] entryVersion;
+
+	private byte[] entryType;
+
+	/** fileName dos poucos JarVersion cujo fileName difere da chave, indexado pela posio da entrada. */
+	private Map<Integer, String> fileNames = new HashMap<Integer, String>();
+
+	/** Os raros JarVersion com componente acima de {@link #VERSION_MAX}, indexados pela posio da entrada. */
+	private Map<Integer, JarVersion> wideVersions = new HashMap<Integer, JarVersion>();
+
+	private int entries;
+
+	private int size;
+
+	/** Posio + 1 de cada entrada, endereamento aberto com sondagem linear. */
+	private int[] table;
+
+	private int modCount;
+
+	private Set<Entry<String, JarVersion>> entrySet;
+
+	public JarVersionMap(){
+		this(16);
+	}
+
+	public JarVersionMap(int expectedSize){
+		if(expectedSize < 0){
+			throw new IllegalArgumentException("Parameter expectedSize cannot be negative.");
+		}
+		int capacity = Math.max(expectedSize, 4);
+		this.entryDirectory = new int[capacity];
+		this.entryName = new int[capacity];
+		this.entryHash = new int[capacity];
+		this.entryVersion = new long[capacity];
+		this.entryType = new byte[capacity];
+		this.table = new int[tableSize(capacity)];
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && find((String) key) >= 0;
+	}
+
+	@Override
+	public JarVersion get(Object key) {
+		if(!(key instanceof String)){
+			return null;
+		}
+		int index = find((String) key);
+		return index < 0 ? null : jarVersion(index, (String) key);
+	}
+
+	@Override
+	public JarVersion put(String key, JarVersion value) {
+		if(key == null){
+			throw new IllegalArgumentException("Parameter key cannot be null.");
+		}
+		int index = find(key);
+		if(index >= 0){
+			JarVersion previous = jarVersion(index, key);
+			set(index, key, value);
+			return previous;
+		}
+		if(this.entries == this.entryName.length){
+			grow();
+		}
+		if((this.entries + 1) * 4 > this.table.length * 3){
+			rehash(tableSize(this.entries + 1));
+		}
+		index = this.entries++;
+		int separator = key.lastIndexOf(File.separatorChar);
+		this.entryDirectory[index] = separator < 0 ? 0 : directory(key, separator);
+		this.entryName[index] = segment(key.substring(separator + 1));
+		this.entryHash[index] = key.hashCode();
+		set(index, key, value);
+		insert(index);
+		this.size++;
+		this.modCount++;
+		return null;
+	}
+
+	@Override
+	public JarVersion remove(Object key) {
+		if(!(key instanceof String)){
+			return null;
+		}
+		int index = find((String) key);
+		if(index < 0){
+			return null;
+		}
+		JarVersion previous = jarVersion(index, (String) key);
+		removeAt(index);
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		this.segments.clear();
+		this.segmentIds.clear();
+		Arrays.fill(this.directoryTable, 0);
+		this.directories = 1;
+		this.fileNames.clear();
+		this.wideVersions.clear();
+		this.entries = 0;
+		this.size = 0;
+		Arrays.fill(this.table, 0);
+		this.modCount++;
+	}
+
+	@Override
+	public Set<Entry<String, JarVersion>> entrySet() {
+		if(this.entrySet == null){
+			this.entrySet = new AbstractSet<Entry<String, JarVersion>>() {
+				@Override
+				public Iterator<Entry<String, JarVersion>> iterator() {
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return JarVersionMap.this.size;
+				}
+
+				@Override
+				public void clear() {
+					JarVersionMap.this.clear();
+				}
+			};
+		}
+		return this.entrySet;
+	}
+
+	private void set(int index, String key, JarVersion value) {
+		if(value == null){
+			this.entryType[index] = NO_VERSION;
+			this.entryVersion[index] = 0;
+			this.fileNames.remove(index);
+			this.wideVersions.remove(index);
+			return;
+		}
+		this.entryType[index] = (byte) value.getJarTypeEnum().ordinal();
+		if(value.getMajor() > VERSION_MAX || value.getMinor() > VERSION_MAX || value.getMaintenance() > VERSION_MAX){
+			this.entryVersion[index] = 0;
+			this.fileNames.remove(index);
+			this.wideVersions.put(index, value);
+			return;
+		}
+		this.entryVersion[index] = BinaryManifest.pack(value);
+		this.wideVersions.remove(index);
+		if(key.equals(value.getFileName())){
+			this.fileNames.remove(index);
+		} else {
+			this.fileNames.put(index, value.getFileName());
+		}
+	}
+
+	private void removeAt(int index) {
+		//a posio continua na tabela como marcador at o prximo rehash
+		this.entryName[index] = REMOVED;
+		this.fileNames.remove(index);
+		this.wideVersions.remove(index);
+		this.size--;
+		this.modCount++;
+	}
+
+	private JarVersion jarVersion(int index, String key) {
+		if(this.entryType[index] == NO_VERSION){
+			return null;
+		}
+		JarVersion wide = this.wideVersions.isEmpty() ? null : this.wideVersions.get(index);
+		if(wide != null){
+			return wide;
+		}
+		long packed = this.entryVersion[index];
+		String fileName = this.fileNames.isEmpty() ? null : this.fileNames.get(index);
+		return new JarVersion((int) (packed >>> (2 * VERSION_BITS)) & VERSION_MAX, (int) (packed >>> VERSION_BITS) & VERSION_MAX,
+				(int) packed & VERSION_MAX, fileName == null ? key : fileName, TYPES[this.entryType[index]]);
+	}
+
+	private int find(String key) {
+		int hash = key.hashCode();
+		int mask = this.table.length - 1;
+		for(int slot = mix(hash) & mask; this.table[slot] != 0; slot = (slot + 1) & mask){
+			int index = this.table[slot] - 1;
+			if(this.entryHash[index] == hash && this.entryName[index] != REMOVED && matches(index, key)){
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Compara a chave com o caminho da entrada do ltimo segmento para o primeiro, sem montar o caminho.
+	 */
+	private boolean matches(int index, String key) {
+		int end = key.length();
+		String name = this.segments.get(this.entryName[index]);
+		int start = end - name.length();
+		if(start < 0 || !key.regionMatches(start, name, 0, name.length())){
+			return false;
+		}
+		int directory = this.entryDirectory[index];
+		while(directory != 0){
+			if(start == 0 || key.charAt(start - 1) != File.separatorChar){
+				return false;
+			}
+			end = start - 1;
+			String segment = this.segments.get(this.directorySegment[directory]);
+			start = end - segment.length();
+			if(start < 0 || !key.regionMatches(start, segment, 0, segment.length())){
+				return false;
+			}
+			directory = this.directoryParent[directory];
+		}
+		return start == 0;
+	}
+
+	private String path(int index) {
+		int directory = this.entryDirectory[index];
+		if(directory == 0){
+			return this.segments.get(this.entryName[index]);
+		}
+		int depth = 0;
+		int length = this.segments.get(this.entryName[index]).length();
+		for(int node = directory; node != 0; node = this.directoryParent[node]){
+			depth++;
+			length += this.segments.get(this.directorySegment[node]).length() + 1;
+		}
+		String[] parts = new String[depth];
+		for(int node = directory; node != 0; node = this.directoryParent[node]){
+			parts[--depth] = this.segments.get(this.directorySegment[node]);
+		}
+		StringBuilder path = new StringBuilder(length);
+		for(String part : parts){
+			path.append(part).append(File.separatorChar);
+		}
+		return path.append(this.segments.get(this.entryName[index])).toString();
+	}
+
+	/**
+	 * @return n do diretrio key[0, end), criando os ns que faltarem
+	 */
+	private int directory(String key, int end) {
+		int parent = 0;
+		int start = 0;
+		while(true){
+			int separator = key.indexOf(File.separatorChar, start);
+			if(separator < 0 || separator > end){
+				separator = end;
+			}
+			int segment = segment(key.substring(start, separator));
+			int mask = this.directoryTable.length - 1;
+			int slot = mix(parent * 31 + segment) & mask;
+			int node = 0;
+			while(this.directoryTable[slot] != 0){
+				int candidate = this.directoryTable[slot] - 1;
+				if(this.directoryParent[candidate] == parent && this.directorySegment[candidate] == segment){
+					node = candidate;
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if(node == 0){
+				node = addDirectory(parent, segment);
+			}
+			parent = node;
+			if(separator == end){
+				return parent;
+			}
+			start = separator + 1;
+		}
+	}
+
+	private int addDirectory(int parent, int segment) {
+		if(this.directories == this.directoryParent.length){
+			this.directoryParent = Arrays.copyOf(this.directoryParent, this.directories * 2);
+			this.directorySegment = Arrays.copyOf(this.directorySegment, this.directories * 2);
+		}
+		int node = this.directories++;
+		this.directoryParent[node] = parent;
+		this.directorySegment[node] = segment;
+		if(this.directories * 4 > this.directoryTable.length * 3){
+			this.directoryTable = new int[this.directoryTable.length * 2];
+			for(int i = 1; i < this.directories; i++){
+				insertDirectory(i);
+			}
+		} else {
+			insertDirectory(node);
+		}
+		return node;
+	}
+
+	private void insertDirectory(int node) {
+		int mask = this.directoryTable.length - 1;
+		int slot = mix(this.directoryParent[node] * 31 + this.directorySegment[node]) & mask;
+		while(this.directoryTable[slot] != 0){
+			slot = (slot + 1) & mask;
+		}
+		this.directoryTable[slot] = node + 1;
+	}
+
+	private int segment(String segment) {
+		Integer id = this.segmentIds.get(segment);
+		if(id == null){
+			id = this.segments.size();
+			this.segments.add(segment);
+			this.segmentIds.put(segment, id);
+		}
+		return id;
+	}
+
+	private void grow() {
+		int capacity = this.entryName.length + (this.entryName.length >> 1) + 1;
+		this.entryDirectory = Arrays.copyOf(this.entryDirectory, capacity);
+		this.entryName = Arrays.copyOf(this.entryName, capacity);
+		this.entryHash = Arrays.copyOf(this.entryHash, capacity);
+		this.entryVersion = Arrays.copyOf(this.entryVersion, capacity);
+		this.entryType = Arrays.copyOf(this.entryType, capacity);
+	}
+
+	/**
+	 * Refaz a tabela descartando as entradas removidas.
+	 */
+	private void rehash(int tableSize) {
+		if(this.size < this.entries){
+			Map<Integer, String> compactedFileNames = new HashMap<Integer, String>();
+			Map<Integer, JarVersion> compactedWideVersions = new HashMap<Integer, JarVersion>();
+			int live = 0;
+			for(int index = 0; index < this.entries; index++){
+				if(this.entryName[index] == REMOVED){
+					continue;
+				}
+				this.entryDirectory[live] = this.entryDirectory[index];
+				this.entryName[live] = this.entryName[index];
+				this.entryHash[live] = this.entryHash[index];
+				this.entryVersion[live] = this.entryVersion[index];
+				this.entryType[live] = this.entryType[index];
+				String fileName = this.fileNames.get(index);
+				if(fileName != null){
+					compactedFileNames.put(live, fileName);
+				}
+				JarVersion wide = this.wideVersions.get(index);
+				if(wide != null){
+					compactedWideVersions.put(live, wide);
+				}
+				live++;
+			}
+			this.entries = live;
+			this.fileNames = compactedFileNames;
+			this.wideVersions = compactedWideVersions;
+		}
+		this.table = new int[Math.max(tableSize, tableSize(this.entries + 1))];
+		for(int index = 0; index < this.entries; index++){
+			insert(index);
+		}
+	}
+
+	private void insert(int index) {
+		int mask = this.table.length - 1;
+		int slot = mix(this.entryHash[index]) & mask;
+		while(this.table[slot] != 0){
+			slot = (slot + 1) & mask;
+		}
+		this.table[slot] = index + 1;
+	}
+
+	private static int mix(int hash) {
+		int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int tableSize(int entries) {
+		int size = 8;
+		while(size * 3 < entries * 4){
+			size <<= 1;
+		}
+		return size;
+	}
+
+	private class EntryIterator implements Iterator<Entry<String, JarVersion>> {
+
+		private int next = advance(0);
+
+		private int last = -1;
+
+		private int expectedModCount = modCount;
+
+		private int advance(int index) {
+			while(index < entries && entryName[index] == REMOVED){
+				index++;
+			}
+			return index;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.next < entries;
+		}
+
+		@Override
+		public Entry<String, JarVersion> next() {
+			if(modCount != this.expectedModCount){
+				throw new ConcurrentModificationException();
+			}
+			if(this.next >= entries){
+				throw new NoSuchElementException();
+			}
+			this.last = this.next;
+			this.next = advance(this.next + 1);
+			String key = path(this.last);
+			return new MapEntry(key, jarVersion(this.last, key));
+		}
+
+		@Override
+		public void remove() {
+			if(this.last < 0){
+				throw new IllegalStateException();
+			}
+			if(modCount != this.expectedModCount){
+				throw new ConcurrentModificationException();
+			}
+			removeAt(this.last);
+			this.last = -1;
+			this.expectedModCount = modCount;
+		}
+	}
+
+	private class MapEntry extends SimpleEntry<String, JarVersion> {
+
+		private static final long serialVersionUID = 1L;
+
+		MapEntry(String key, JarVersion value) {
+			super(key, value);
+		}
+
+		@Override
+		public JarVersion setValue(JarVersion value) {
+			JarVersion previous = put(getKey(), value);
+			super.setValue(value);
+			return previous;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package org.reichel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.reichel.ConfigReload")
+@Label("Recarga de configurao")
+@Description("Leitura e publicao de um arquivo de configurao em Config.reload")
+@Category({"URei", "Config"})
+public class ConfigReloadEvent extends jdk.jfr.Event {
+
+	@Label("Arquivo")
+	public String path;
+
+	@Label("Propriedades")
+	public int keys;
+
+	@Label("Sucesso")
+	public boolean success;
+}
@@ -0,0 +1,24 @@
+package org.reichel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.reichel.Download")
+@Label("Download de arquivo")
+@Description("Transferncia de um arquivo em DownloadFile")
+@Category({"URei", "Download"})
+public class DownloadEvent extends jdk.jfr.Event {
+
+	@Label("URL")
+	public String url;
+
+	@Label("Arquivo")
+	public String path;
+
+	@Label("Bytes transferidos")
+	@DataAmount
+	public long bytes;
+}
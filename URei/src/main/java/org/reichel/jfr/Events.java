@@ -0,0 +1,68 @@
+package org.reichel.jfr;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Ponto de entrada dos eventos do Flight Recorder. As classes de evento deste pacote dependem do jdk.jfr,
+ * disponvel a partir do Java 11, e s so carregadas por reflexo quando ele existe; em JVMs anteriores
+ * {@link #begin(String)} retorna um evento que nunca  gravado.
+ * Exemplo de utilizao:
+ * <pre>
+ *   Span event = Events.begin(Events.JAR_VERSION);
+ *   ...
+ *   if(event.shouldCommit()){
+ *     event.set("path", jarFilePath).set("version", version).commit();
+ *   }
+ * </pre>
+ */
+public final class Events {
+
+	private static final Logger logger = Logger.getLogger(Events.class);
+
+	public static final String CONFIG_RELOAD = "ConfigReloadEvent";
+
+	public static final String DOWNLOAD = "DownloadEvent";
+
+	public static final String JAR_EXTRACT = "JarExtractEvent";
+
+	public static final String JAR_VERSION = "JarVersionEvent";
+
+	public static final String PROCESS = "ProcessEvent";
+
+	public static final String PROCESS_WAIT = "ProcessWaitEvent";
+
+	private static final SpanFactory factory = load();
+
+	private Events(){
+	}
+
+	private static SpanFactory load() {
+		try {
+			Class.forName("jdk.jfr.FlightRecorder");
+			return (SpanFactory) Class.forName("org.reichel.jfr.JfrSpanFactory").getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (Exception e) {
+			logger.warn("Eventos do Flight Recorder desabilitados: " + e.getClass().getName() + ":" + e.getMessage());
+			return null;
+		} catch (LinkageError e) {
+			logger.warn("Eventos do Flight Recorder desabilitados: " + e.getClass().getName() + ":" + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @param event uma das constantes desta classe
+	 * @return evento iniciado, ou um evento que nunca  gravado se no houver gravao ativa para ele
+	 */
+	public static Span begin(String event){
+		return factory == null ? Span.NONE : factory.begin(event);
+	}
+
+	/**
+	 * @return true se a JVM possui o Flight Recorder
+	 */
+	public static boolean isAvailable(){
+		return factory != null;
+	}
+}
@@ -0,0 +1,27 @@
+package org.reichel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.reichel.JarExtract")
+@Label("Extrao de jar")
+@Description("Extrao dos arquivos de um jar em JarUtils.extractFiles")
+@Category({"URei", "Jar"})
+public class JarExtractEvent extends jdk.jfr.Event {
+
+	@Label("Arquivo")
+	public String path;
+
+	@Label("Diretrio de destino")
+	public String targetFolder;
+
+	@Label("Arquivos extrados")
+	public int entries;
+
+	@Label("Bytes extrados")
+	@DataAmount
+	public long bytes;
+}
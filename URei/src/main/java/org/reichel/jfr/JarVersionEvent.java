@@ -0,0 +1,19 @@
+package org.reichel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.reichel.JarVersion")
+@Label("Leitura de verso de jar")
+@Description("Leitura do MANIFEST.MF de um jar em JarUtils.getJarVersion")
+@Category({"URei", "Jar"})
+public class JarVersionEvent extends jdk.jfr.Event {
+
+	@Label("Arquivo")
+	public String path;
+
+	@Label("Verso")
+	public String version;
+}
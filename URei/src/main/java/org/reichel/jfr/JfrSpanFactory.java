@@ -0,0 +1,118 @@
+package org.reichel.jfr;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+
+/**
+ * nica classe, alm dos eventos, que referencia o jdk.jfr; carregada por {@link Events} somente quando ele existe.
+ * Sem gravao ativa para o evento nenhum objeto  criado.
+ */
+class JfrSpanFactory implements SpanFactory {
+
+	private final ConcurrentMap<String, EventClass> eventClasses = new ConcurrentHashMap<String, EventClass>();
+
+	@Override
+	public Span begin(String event) {
+		EventClass eventClass = eventClass(event);
+		if(!eventClass.type.isEnabled()){
+			return Span.NONE;
+		}
+		try {
+			Event instance = eventClass.constructor.newInstance();
+			instance.begin();
+			return new JfrSpan(eventClass, instance);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Event '" + event + "' cannot be created.", e);
+		}
+	}
+
+	private EventClass eventClass(String event) {
+		EventClass eventClass = this.eventClasses.get(event);
+		if(eventClass == null){
+			try {
+				eventClass = new EventClass(Class.forName(JfrSpanFactory.class.getPackage().getName() + "." + event).asSubclass(Event.class));
+			} catch (ClassNotFoundException e) {
+				throw new IllegalArgumentException("Unknown event '" + event + "'.", e);
+			}
+			EventClass previous = this.eventClasses.putIfAbsent(event, eventClass);
+			if(previous != null){
+				eventClass = previous;
+			}
+		}
+		return eventClass;
+	}
+
+	private static class EventClass {
+
+		private final EventType type;
+
+		private final Constructor<? extends Event> constructor;
+
+		private final ConcurrentMap<String, Field> fields = new ConcurrentHashMap<String, Field>();
+
+		EventClass(Class<? extends Event> eventClass) {
+			this.type = EventType.getEventType(eventClass);
+			try {
+				this.constructor = eventClass.getConstructor();
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException("Event " + eventClass.getName() + " has no public constructor.", e);
+			}
+		}
+
+		Field field(String name) {
+			Field field = this.fields.get(name);
+			if(field == null){
+				try {
+					field = this.constructor.getDeclaringClass().getField(name);
+				} catch (NoSuchFieldException e) {
+					throw new IllegalArgumentException("Event " + this.constructor.getDeclaringClass().getName() + " has no field '" + name + "'.", e);
+				}
+				this.fields.put(name, field);
+			}
+			return field;
+		}
+	}
+
+	private static class JfrSpan extends Span {
+
+		private final EventClass eventClass;
+
+		private final Event event;
+
+		JfrSpan(EventClass eventClass, Event event) {
+			this.eventClass = eventClass;
+			this.event = event;
+		}
+
+		@Override
+		public boolean isEnabled() {
+			return this.event.isEnabled();
+		}
+
+		@Override
+		public boolean shouldCommit() {
+			this.event.end();
+			return this.event.shouldCommit();
+		}
+
+		@Override
+		public Span set(String field, Object value) {
+			try {
+				this.eventClass.field(field).set(this.event, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Field '" + field + "' cannot be set.", e);
+			}
+			return this;
+		}
+
+		@Override
+		public void commit() {
+			this.event.commit();
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package org.reichel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.reichel.Process")
+@Label("Processo")
+@Description("Execuo de um processo filho em Executor.execute, do incio at o trmino")
+@Category({"URei", "Processo"})
+public class ProcessEvent extends jdk.jfr.Event {
+
+	@Label("Comando")
+	public String command;
+
+	@Label("Cdigo de sada")
+	public int exitCode;
+}
@@ -0,0 +1,19 @@
+package org.reichel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.reichel.ProcessWait")
+@Label("Espera por processo")
+@Description("Tempo bloqueado em Executor.waitFor aguardando o trmino de um processo filho")
+@Category({"URei", "Processo"})
+public class ProcessWaitEvent extends jdk.jfr.Event {
+
+	@Label("Comando")
+	public String command;
+
+	@Label("Cdigo de sada")
+	public int exitCode;
+}
@@ -0,0 +1,53 @@
+package org.reichel.jfr;
+
+/**
+ * Evento em andamento obtido por {@link Events#begin(String)}. Esconde o jdk.jfr de quem emite os eventos,
+ * assim a biblioteca continua rodando em JVMs sem Flight Recorder.
+ * Os campos do evento s precisam ser calculados quando {@link #isEnabled()} retorna true.
+ */
+public abstract class Span {
+
+	/**
+	 * Evento que no  gravado: Flight Recorder indisponvel, nenhuma gravao ativa ou evento desabilitado.
+	 */
+	static final Span NONE = new Span() {
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+
+		@Override
+		public boolean shouldCommit() {
+			return false;
+		}
+
+		@Override
+		public Span set(String field, Object value) {
+			return this;
+		}
+
+		@Override
+		public void commit() {
+		}
+	};
+
+	/**
+	 * @return true se o evento ser gravado caso atinja o limite de durao da gravao
+	 */
+	public abstract boolean isEnabled();
+
+	/**
+	 * Encerra a medio da durao.
+	 * @return true se o evento deve ser preenchido e gravado com {@link #commit()}
+	 */
+	public abstract boolean shouldCommit();
+
+	/**
+	 * @param field nome do campo pblico da classe do evento, ex: "path"
+	 * @param value valor do campo, tipos primitivos na forma de wrapper
+	 * @return a instancia de Span
+	 */
+	public abstract Span set(String field, Object value);
+
+	public abstract void commit();
+}
@@ -0,0 +1,13 @@
+package org.reichel.jfr;
+
+/**
+ * Criao dos eventos, implementada por {@link JfrSpanFactory} apenas quando o jdk.jfr est disponvel.
+ */
+interface SpanFactory {
+
+	/**
+	 * @param event nome simples da classe do evento neste pacote
+	 * @return evento iniciado
+	 */
+	Span begin(String event);
+}
@@ -0,0 +1,17 @@
+/**
+ * Eventos do Java Flight Recorder emitidos pelas operaes de atualizao: leitura de verses e extrao de jars,
+ * downloads, processos filhos e recarga de configurao.
+ * Os eventos so emitidos atravs de {@link org.reichel.jfr.Events}, que s carrega o jdk.jfr quando ele existe:
+ * a biblioteca continua rodando a partir do Java 8 e os eventos ficam disponveis a partir do Java 11.
+ * Sem uma gravao ativa nenhum evento  criado e o custo se resume a verificar se o evento est habilitado.
+ * Para gravar uma execuo e analis-la no JDK Mission Control:
+ * <pre>
+ *   java -XX:StartFlightRecording=filename=atualizacao.jfr,settings=profile -jar atualizador.jar
+ * </pre>
+ * ou, para uma aplicao j em execuo:
+ * <pre>
+ *   jcmd &lt;pid&gt; JFR.start name=atualizacao filename=atualizacao.jfr
+ *   jcmd &lt;pid&gt; JFR.stop name=atualizacao
+ * </pre>
+ */
+package org.reichel.jfr;
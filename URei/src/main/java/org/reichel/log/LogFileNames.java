@@ -0,0 +1,124 @@
+package org.reichel.log;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Nomes dos arquivos de log no formato yyyyMMdd_N.log.
+ * Mantm em memria o dia corrente (recalculado apenas na virada do dia) e
+ * o prximo contador de cada dia, evitando sondar o sistema de arquivos a cada gravao.
+ */
+class LogFileNames {
+
+	static final String EXTENSION = ".log";
+
+	private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd");
+
+	private final File directory;
+
+	private String day;
+
+	private long nextDayStart;
+
+	private int counter;
+
+	LogFileNames(File directory){
+		this.directory = directory;
+	}
+
+	/**
+	 * @param now instante atual em milisegundos
+	 * @return dia corrente no formato yyyyMMdd
+	 */
+	synchronized String day(long now){
+		if(this.day == null || now >= this.nextDayStart){
+			this.day = this.dayFormat.format(new Date(now));
+			this.nextDayStart = nextDayStart(now);
+			this.counter = lastCounter(this.directory, this.day);
+		}
+		return this.day;
+	}
+
+	/**
+	 * Reserva o prximo nome de arquivo do dia corrente.
+	 * O contador em memria  apenas uma dica, caso outro processo tenha criado o arquivo ele  pulado.
+	 * @param now instante atual em milisegundos
+	 * @return arquivo ainda no existente
+	 */
+	synchronized File next(long now){
+		String currentDay = day(now);
+		File file;
+		do {
+			this.counter++;
+			file = new File(this.directory, fileName(currentDay, this.counter));
+		} while(file.exists());
+		return file;
+	}
+
+	static String fileName(String day, int counter){
+		return day + "_" + counter + EXTENSION;
+	}
+
+	/**
+	 * @param fileName nome do arquivo
+	 * @return dia (yyyyMMdd) do arquivo ou null se o nome no seguir o padro yyyyMMdd_N.log
+	 */
+	static String dayOf(String fileName){
+		if(counterOf(fileName) == -1){
+			return null;
+		}
+		return fileName.substring(0, 8);
+	}
+
+	/**
+	 * @param fileName nome do arquivo
+	 * @return contador do arquivo ou -1 se o nome no seguir o padro yyyyMMdd_N.log
+	 */
+	static int counterOf(String fileName){
+		if(fileName == null || fileName.length() <= 9 + EXTENSION.length() || fileName.charAt(8) != '_' || !fileName.endsWith(EXTENSION)){
+			return -1;
+		}
+		for(int i = 0; i < 8; i++){
+			if(!Character.isDigit(fileName.charAt(i))){
+				return -1;
+			}
+		}
+		String counter = fileName.substring(9, fileName.length() - EXTENSION.length());
+		for(int i = 0; i < counter.length(); i++){
+			if(!Character.isDigit(counter.charAt(i))){
+				return -1;
+			}
+		}
+		try {
+			return Integer.parseInt(counter);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static int lastCounter(File directory, String day){
+		int last = 0;
+		String[] names = directory.list();
+		if(names != null){
+			for(String name : names){
+				if(name.startsWith(day)){
+					last = Math.max(last, counterOf(name));
+				}
+			}
+		}
+		return last;
+	}
+
+	private static long nextDayStart(long now) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(now);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		calendar.add(Calendar.DAY_OF_MONTH, 1);
+		return calendar.getTimeInMillis();
+	}
+}
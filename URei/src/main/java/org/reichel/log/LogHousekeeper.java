@@ -0,0 +1,417 @@
+package org.reichel.log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Manuteno em segundo plano de um diretrio de logs gravado pelo {@link SaveLog} ou pelo {@link RollingLogWriter}.
+ * Os arquivos yyyyMMdd_N.log de dias anteriores so unidos, na ordem do contador, em um nico arquivo
+ * compactado yyyyMMdd.log.gz e removidos. Em seguida so apagados os arquivos mais antigos que maxAgeDays
+ * e, caso o diretrio ultrapasse maxTotalSize bytes, os mais antigos at respeitar o limite.
+ * Arquivos do dia corrente nunca so tocados, por isso a manuteno no concorre com quem est gravando.
+ * Exemplo de utilizao:
+ * <pre>
+ *   LogHousekeeper housekeeper = LogHousekeeper.start("log", 90, 500 * 1024 * 1024, 60 * 60 * 1000);
+ *   ...
+ *   housekeeper.stop();
+ * </pre>
+ */
+public class LogHousekeeper implements Runnable {
+
+	private static final Logger logger = Logger.getLogger(LogHousekeeper.class);
+
+	public static final String ARCHIVE_EXTENSION = LogFileNames.EXTENSION + ".gz";
+
+	/**
+	 * Relao dos logs j unidos ao arquivo do dia que no puderam ser removidos, ex: ainda abertos no Windows.
+	 */
+	public static final String ARCHIVED_EXTENSION = ARCHIVE_EXTENSION + ".archived";
+
+	private static final String TEMP_EXTENSION = ".tmp";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File directory;
+
+	private final int maxAgeDays;
+
+	private final long maxTotalSize;
+
+	private final LogFileNames logFileNames;
+
+	private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd");
+
+	private volatile Thread thread;
+
+	/**
+	 * @param path diretrio dos logs
+	 * @param maxAgeDays quantidade de dias a manter, zero ou negativo no limita
+	 * @param maxTotalSize tamanho mximo em bytes do diretrio, zero ou negativo no limita
+	 */
+	public LogHousekeeper(String path, int maxAgeDays, long maxTotalSize){
+		if(path == null){
+			throw new IllegalArgumentException("Parameter path cannot be null.");
+		}
+		this.directory = new File(path);
+		this.maxAgeDays = maxAgeDays;
+		this.maxTotalSize = maxTotalSize;
+		this.logFileNames = new LogFileNames(this.directory);
+	}
+
+	public static LogHousekeeper start(String path, int maxAgeDays, long maxTotalSize, long interval){
+		return new LogHousekeeper(path, maxAgeDays, maxTotalSize).start(interval);
+	}
+
+	/**
+	 * Inicia uma thread de baixa prioridade que executa a manuteno a cada intervalo.
+	 * @param interval intervalo em milisegundos entre as execues
+	 * @return a instancia de LogHousekeeper
+	 */
+	public synchronized LogHousekeeper start(final long interval){
+		if(interval <= 0){
+			throw new IllegalArgumentException("Parameter interval must be greater than zero.");
+		}
+		if(this.thread != null){
+			throw new IllegalStateException("LogHousekeeper already started.");
+		}
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while(thread == Thread.currentThread()){
+					LogHousekeeper.this.run();
+					try {
+						Thread.sleep(interval);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "LogHousekeeper");
+		this.thread.setDaemon(true);
+		this.thread.setPriority(Thread.MIN_PRIORITY);
+		this.thread.start();
+		return this;
+	}
+
+	public synchronized void stop(){
+		if(this.thread != null){
+			Thread stopping = this.thread;
+			this.thread = null;
+			stopping.interrupt();
+		}
+	}
+
+	/**
+	 * Executa uma manuteno completa: compacta os dias anteriores e aplica a reteno.
+	 */
+	@Override
+	public synchronized void run() {
+		if(!this.directory.isDirectory()){
+			return;
+		}
+		String today = this.logFileNames.day(System.currentTimeMillis());
+		for(Entry<String, List<File>> day : closedLogsByDay(today).entrySet()){
+			archive(day.getKey(), day.getValue());
+		}
+		applyRetention(today);
+	}
+
+	private Map<String, List<File>> closedLogsByDay(String today) {
+		Map<String, List<File>> result = new TreeMap<String, List<File>>();
+		File[] files = this.directory.listFiles();
+		if(files != null){
+			for(File file : files){
+				String day = LogFileNames.dayOf(file.getName());
+				if(day != null && day.compareTo(today) < 0){
+					List<File> logs = result.get(day);
+					if(logs == null){
+						logs = new ArrayList<File>();
+						result.put(day, logs);
+					}
+					logs.add(file);
+				}
+			}
+		}
+		for(List<File> logs : result.values()){
+			Collections.sort(logs, new Comparator<File>() {
+				@Override
+				public int compare(File o1, File o2) {
+					return LogFileNames.counterOf(o1.getName()) - LogFileNames.counterOf(o2.getName());
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * Une os logs do dia no arquivo yyyyMMdd.log.gz. Se o arquivo j existir o contedo  acrescentado
+	 * como um novo membro gzip, formato lido normalmente por GZIPInputStream e gunzip.
+	 * O arquivo  montado em um temporrio, gravado em disco e s ento movido atomicamente sobre o anterior.
+	 * Em seguida, antes de qualquer remoo, os logs unidos so registrados em yyyyMMdd.log.gz.archived, de forma
+	 * que uma interrupo durante as remoes no os una novamente na prxima execuo. Aps as remoes o
+	 * registro fica apenas com os logs que no puderam ser removidos.
+	 */
+	private void archive(String day, List<File> logs) {
+		File archive = new File(this.directory, day + ARCHIVE_EXTENSION);
+		File temp = new File(this.directory, day + ARCHIVE_EXTENSION + TEMP_EXTENSION);
+		File archivedList = new File(this.directory, day + ARCHIVED_EXTENSION);
+		Set<String> archived = readArchived(archivedList);
+		List<File> pending = new ArrayList<File>();
+		for(File log : logs){
+			if(!archived.contains(log.getName())){
+				pending.add(log);
+			}
+		}
+		if(temp.exists()){
+			if(recover(temp, archive)){
+				//o temporrio completo j contm todos os logs ainda no registrados
+				archived.addAll(names(pending));
+				pending.clear();
+				writeArchived(archivedList, archived);
+			}
+		}
+		if(!pending.isEmpty()){
+			FileOutputStream os = null;
+			try {
+				os = new FileOutputStream(temp);
+				if(archive.exists()){
+					copy(archive, os);
+				}
+				GZIPOutputStream gzip = new GZIPOutputStream(os, 8192);
+				for(File log : pending){
+					copy(log, gzip);
+				}
+				gzip.finish();
+				os.getFD().sync();
+				os.close();
+				os = null;
+				Files.move(temp.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				logger.error("Problemas ao compactar logs do dia " + day + ": " + e.getClass().getName() + ":" + e.getMessage());
+				close(os);
+				temp.delete();
+				return;
+			}
+			archived.addAll(names(pending));
+			writeArchived(archivedList, archived);
+		}
+		Set<String> remaining = new TreeSet<String>();
+		for(File log : logs){
+			if(archived.contains(log.getName()) && !log.delete()){
+				logger.error("No foi possvel remover log compactado: " + log.getAbsolutePath());
+				remaining.add(log.getName());
+			}
+		}
+		if(!remaining.equals(archived)){
+			writeArchived(archivedList, remaining);
+		}
+	}
+
+	/**
+	 * Trata o temporrio deixado por uma execuo interrompida. Se o arquivo do dia no existe e o temporrio
+	 *  um gzip completo, a interrupo ocorreu depois de grav-lo e ele passa a ser o arquivo do dia.
+	 * Caso contrrio o arquivo do dia est intacto e o temporrio  descartado.
+	 * @return true se o temporrio foi recuperado
+	 */
+	private boolean recover(File temp, File archive) {
+		try {
+			if(!archive.exists() && isCompleteGzip(temp)){
+				Files.move(temp.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				logger.warn("Arquivo de logs recuperado de execuo interrompida: " + archive.getAbsolutePath());
+				return true;
+			}
+			Files.deleteIfExists(temp.toPath());
+		} catch (IOException e) {
+			logger.error("Problemas ao recuperar '" + temp.getAbsolutePath() + "': " + e.getClass().getName() + ":" + e.getMessage());
+		}
+		return false;
+	}
+
+	private boolean isCompleteGzip(File file) {
+		InputStream is = null;
+		try {
+			is = new GZIPInputStream(new FileInputStream(file), 8192);
+			byte[] buffer = new byte[8192];
+			while(is.read(buffer) != -1){
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			close(is);
+		}
+	}
+
+	private Set<String> readArchived(File archivedList) {
+		Set<String> archived = new HashSet<String>();
+		if(archivedList.isFile()){
+			try {
+				for(String line : Files.readAllLines(archivedList.toPath(), UTF8)){
+					if(!"".equals(line.trim())){
+						archived.add(line.trim());
+					}
+				}
+			} catch (IOException e) {
+				logger.error("Problemas ao ler '" + archivedList.getAbsolutePath() + "': " + e.getMessage());
+			}
+		}
+		return archived;
+	}
+
+	/**
+	 * Grava o registro em um temporrio, em disco, e o move atomicamente sobre o anterior.
+	 */
+	private void writeArchived(File archivedList, Set<String> names) {
+		File temp = new File(archivedList.getPath() + TEMP_EXTENSION);
+		FileOutputStream os = null;
+		try {
+			if(names.isEmpty()){
+				Files.deleteIfExists(archivedList.toPath());
+				return;
+			}
+			os = new FileOutputStream(temp);
+			Writer writer = new OutputStreamWriter(os, UTF8);
+			for(String name : new TreeSet<String>(names)){
+				writer.write(name);
+				writer.write('\n');
+			}
+			writer.flush();
+			os.getFD().sync();
+			os.close();
+			os = null;
+			Files.move(temp.toPath(), archivedList.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.error("Problemas ao gravar '" + archivedList.getAbsolutePath() + "': " + e.getMessage());
+			close(os);
+			temp.delete();
+		}
+	}
+
+	private List<String> names(List<File> files) {
+		List<String> names = new ArrayList<String>();
+		for(File file : files){
+			names.add(file.getName());
+		}
+		return names;
+	}
+
+	private void applyRetention(String today) {
+		File[] files = this.directory.listFiles();
+		if(files == null){
+			return;
+		}
+		List<File> candidates = new ArrayList<File>();
+		long totalSize = 0;
+		for(File file : files){
+			if(file.isFile()){
+				totalSize += file.length();
+				String day = dayOf(file.getName());
+				if(day != null && day.compareTo(today) < 0){
+					candidates.add(file);
+				}
+			}
+		}
+		Collections.sort(candidates, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return o1.getName().compareTo(o2.getName());
+			}
+		});
+		String oldestDay = this.maxAgeDays > 0 ? oldestDayToKeep() : null;
+		for(File file : candidates){
+			boolean expired = oldestDay != null && dayOf(file.getName()).compareTo(oldestDay) < 0;
+			boolean oversized = this.maxTotalSize > 0 && totalSize > this.maxTotalSize;
+			if(!expired && !oversized){
+				break;
+			}
+			long length = file.length();
+			if(file.delete()){
+				totalSize -= length;
+			} else {
+				logger.error("No foi possvel remover log antigo: " + file.getAbsolutePath());
+			}
+		}
+	}
+
+	private String dayOf(String fileName) {
+		if(fileName.endsWith(ARCHIVE_EXTENSION) && fileName.length() == 8 + ARCHIVE_EXTENSION.length()
+				|| fileName.endsWith(ARCHIVED_EXTENSION) && fileName.length() == 8 + ARCHIVED_EXTENSION.length()){
+			String day = fileName.substring(0, 8);
+			for(int i = 0; i < day.length(); i++){
+				if(!Character.isDigit(day.charAt(i))){
+					return null;
+				}
+			}
+			return day;
+		}
+		return LogFileNames.dayOf(fileName);
+	}
+
+	private String oldestDayToKeep() {
+		Calendar calendar = Calendar.getInstance();
+		calendar.add(Calendar.DAY_OF_MONTH, -this.maxAgeDays);
+		return this.dayFormat.format(calendar.getTime());
+	}
+
+	private void copy(File file, OutputStream os) throws IOException {
+		InputStream is = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int bytesRead;
+			while((bytesRead = is.read(buffer)) != -1){
+				os.write(buffer, 0, bytesRead);
+			}
+		} finally {
+			close(is);
+		}
+	}
+
+	private void close(Closeable closeable) {
+		if(closeable != null){
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				logger.error("Problemas ao liberar recursos: " + e.getMessage());
+			}
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public int getMaxAgeDays() {
+		return maxAgeDays;
+	}
+
+	public long getMaxTotalSize() {
+		return maxTotalSize;
+	}
+}
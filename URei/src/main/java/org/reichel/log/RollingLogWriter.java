@@ -0,0 +1,231 @@
+package org.reichel.log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Gravador de log que mantm o arquivo corrente aberto e acrescenta o texto atravs de um
+ * buffer, que  descarregado no disco por uma thread em segundo plano.
+ * Os arquivos seguem o mesmo padro do {@link SaveLog} (yyyyMMdd_N.log) e um novo arquivo 
+ * iniciado na virada do dia ou quando o arquivo corrente atinge o tamanho mximo.
+ * Exemplo de utilizao:
+ * <pre>
+ *   RollingLogWriter writer = RollingLogWriter.open("log");
+ *   writer.append("mensagem\n");
+ *   ...
+ *   writer.close();
+ * </pre>
+ */
+public class RollingLogWriter implements Closeable {
+
+	private static final Logger logger = Logger.getLogger(RollingLogWriter.class);
+
+	public static final long DEFAULT_MAX_FILE_SIZE = 5 * 1024 * 1024;
+
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String path;
+
+	private final long maxFileSize;
+
+	private final long flushInterval;
+
+	private final Charset charset;
+
+	private final LogFileNames logFileNames;
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	private final Thread flusher;
+
+	private final Thread shutdownHook;
+
+	private File file;
+
+	private String day;
+
+	private FileChannel channel;
+
+	private long size;
+
+	private volatile boolean closed = false;
+
+	public RollingLogWriter(String path, long maxFileSize, long flushInterval, Charset charset){
+		if(path == null){
+			throw new IllegalArgumentException("Parameter path cannot be null.");
+		}
+		if(maxFileSize <= 0){
+			throw new IllegalArgumentException("Parameter maxFileSize must be greater than zero.");
+		}
+		if(flushInterval <= 0){
+			throw new IllegalArgumentException("Parameter flushInterval must be greater than zero.");
+		}
+		if(charset == null){
+			throw new IllegalArgumentException("Parameter charset cannot be null.");
+		}
+		if(!path.endsWith(Character.toString(File.separatorChar))){
+			path = path + File.separatorChar;
+		}
+		File f = new File(path);
+		if(!f.exists()){
+			f.mkdirs();
+		}
+		this.path = path;
+		this.maxFileSize = maxFileSize;
+		this.flushInterval = flushInterval;
+		this.charset = charset;
+		this.logFileNames = new LogFileNames(f);
+		this.flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flushPeriodically();
+			}
+		}, "RollingLogWriter-flusher");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+		this.shutdownHook = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+	}
+
+	public static RollingLogWriter open(String path){
+		return new RollingLogWriter(path, DEFAULT_MAX_FILE_SIZE, DEFAULT_FLUSH_INTERVAL, Charset.forName("UTF-8"));
+	}
+
+	/**
+	 * Acrescenta o texto ao arquivo de log corrente. O texto fica no buffer at a prxima
+	 * descarga da thread em segundo plano, de {@link #flush()} ou at o buffer encher.
+	 * @param log texto a ser gravado
+	 * @return arquivo onde o texto ser gravado
+	 */
+	public synchronized File append(String log){
+		if(this.closed){
+			throw new IllegalStateException("RollingLogWriter already closed.");
+		}
+		if(log == null || log.length() == 0){
+			return this.file;
+		}
+		byte[] bytes = log.getBytes(this.charset);
+		try {
+			rollIfNeeded(bytes.length);
+			if(bytes.length > this.buffer.remaining()){
+				drain();
+			}
+			if(bytes.length > this.buffer.capacity()){
+				writeFully(ByteBuffer.wrap(bytes));
+			} else {
+				this.buffer.put(bytes);
+			}
+			this.size += bytes.length;
+		} catch (IOException e) {
+			logger.error("Problemas ao gravar log '" + this.file + "': " + e.getClass().getName() + ":" + e.getMessage());
+		}
+		return this.file;
+	}
+
+	/**
+	 * Descarrega o buffer no arquivo corrente.
+	 */
+	public synchronized void flush(){
+		try {
+			drain();
+		} catch (IOException e) {
+			logger.error("Problemas ao descarregar log '" + this.file + "': " + e.getClass().getName() + ":" + e.getMessage());
+		}
+	}
+
+	@Override
+	public void close(){
+		synchronized (this) {
+			if(this.closed){
+				return;
+			}
+			this.closed = true;
+			flush();
+			closeChannel();
+		}
+		this.flusher.interrupt();
+		try {
+			Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+		} catch (IllegalStateException e) {
+			//JVM j est finalizando, o prprio hook descarrega o buffer
+		}
+	}
+
+	private void flushPeriodically() {
+		while(!this.closed){
+			try {
+				Thread.sleep(this.flushInterval);
+			} catch (InterruptedException e) {
+				return;
+			}
+			flush();
+		}
+	}
+
+	private void rollIfNeeded(int length) throws IOException {
+		long now = System.currentTimeMillis();
+		boolean newDay = !this.logFileNames.day(now).equals(this.day);
+		if(this.channel == null || newDay || (this.size > 0 && this.size + length > this.maxFileSize)){
+			drain();
+			closeChannel();
+			this.file = this.logFileNames.next(now);
+			this.day = this.logFileNames.day(now);
+			this.channel = new FileOutputStream(this.file, true).getChannel();
+			this.size = 0;
+		}
+	}
+
+	private void drain() throws IOException {
+		if(this.channel != null && this.buffer.position() > 0){
+			this.buffer.flip();
+			writeFully(this.buffer);
+			this.buffer.clear();
+		}
+	}
+
+	private void writeFully(ByteBuffer source) throws IOException {
+		while(source.hasRemaining()){
+			this.channel.write(source);
+		}
+	}
+
+	private void closeChannel() {
+		if(this.channel != null){
+			try {
+				this.channel.close();
+			} catch (IOException e) {
+				logger.error("Problemas ao liberar recursos: " + e.getMessage());
+			}
+			this.channel = null;
+		}
+	}
+
+	/**
+	 * @return arquivo corrente ou null se nada foi gravado ainda
+	 */
+	public synchronized File getFile() {
+		return file;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getMaxFileSize() {
+		return maxFileSize;
+	}
+}
@@ -3,8 +3,6 @@ package org.reichel.log;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 
 public class SaveLog {
 
@@ -12,6 +10,8 @@ public class SaveLog {
 	
 	private final String path;
 	
+	private final LogFileNames logFileNames;
+	
 	private SaveLog(String path){
 		if(path == null){
 			throw new IllegalArgumentException("Parameter path cannot be null.");
@@ -24,6 +24,7 @@ public class SaveLog {
 			f.mkdirs();
 		}
 		this.path = path;
+		this.logFileNames = new LogFileNames(f);
 	}
 	
 	public static SaveLog bookFile(String path){
@@ -61,16 +62,9 @@ public class SaveLog {
 	}
 
 	private void getLogFile() {
-		int counter = 0;
-		File f = null;
-		while(f == null){
-			counter ++;
-			f = new File(this.path + new SimpleDateFormat("yyyyMMdd").format(new Date()) + "_" + counter + ".log");
-			if(f.exists()){
-				f = null;
-			} else {
-				this.file = f;
-			}
+		long now = System.currentTimeMillis();
+		if(this.file == null || this.file.exists() || !this.file.getName().startsWith(this.logFileNames.day(now))){
+			this.file = this.logFileNames.next(now);
 		}
 	}
 
@@ -0,0 +1,47 @@
+package org.reichel.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contador para atualizaes concorrentes, apoiado em um LongAdder: threads concorrentes incrementam
+ * clulas diferentes e a leitura soma todas elas.
+ * Exemplo de utilizao:
+ * <pre>
+ *   private static final Counter jarsScanned = MetricsRegistry.getDefault().counter("jar.scanned");
+ *   ...
+ *   jarsScanned.increment();
+ * </pre>
+ */
+public class Counter implements CounterMBean {
+
+	private final LongAdder count = new LongAdder();
+
+	private final long created = System.nanoTime();
+
+	public void increment(){
+		this.count.increment();
+	}
+
+	public void add(long value){
+		this.count.add(value);
+	}
+
+	@Override
+	public long getCount(){
+		return this.count.sum();
+	}
+
+	/**
+	 * @return mdia por segundo desde a criao do contador
+	 */
+	@Override
+	public double getMeanRate(){
+		double seconds = (System.nanoTime() - this.created) / 1000000000d;
+		return seconds > 0 ? getCount() / seconds : 0;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(getCount());
+	}
+}
@@ -0,0 +1,11 @@
+package org.reichel.metrics;
+
+/**
+ * Atributos de um {@link Counter} publicados via JMX.
+ */
+public interface CounterMBean {
+
+	long getCount();
+
+	double getMeanRate();
+}
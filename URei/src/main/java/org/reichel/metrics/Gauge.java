@@ -0,0 +1,17 @@
+package org.reichel.metrics;
+
+/**
+ * Valor instantneo lido somente quando consultado, ex: quantidade de processos em execuo.
+ * Exemplo de utilizao:
+ * <pre>
+ *   MetricsRegistry.getDefault().gauge("exec.running", new Gauge() {
+ *     public long getValue() {
+ *       return running.get();
+ *     }
+ *   });
+ * </pre>
+ */
+public interface Gauge {
+
+	long getValue();
+}
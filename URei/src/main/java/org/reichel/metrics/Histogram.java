@@ -0,0 +1,138 @@
+package org.reichel.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribuio de valores no negativos, normalmente tempos em microsegundos, com percentis aproximados.
+ * Cada potncia de 2  dividida em 8 faixas, o percentil retornado  o limite superior da faixa e fica
+ * no mximo 12,5% acima do valor real. O registro de um valor no aloca memria nem usa bloqueio.
+ * Exemplo de utilizao:
+ * <pre>
+ *   private static final Histogram manifestTime = MetricsRegistry.getDefault().histogram("jar.manifest.time");
+ *   ...
+ *   long start = System.nanoTime();
+ *   ...
+ *   manifestTime.updateElapsed(start);
+ * </pre>
+ */
+public class Histogram implements HistogramMBean {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+	private final Counter count = new Counter();
+
+	private final Counter sum = new Counter();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param value valor a registrar, valores negativos so registrados como zero
+	 */
+	public void update(long value){
+		if(value < 0){
+			value = 0;
+		}
+		this.buckets.incrementAndGet(index(value));
+		this.count.increment();
+		this.sum.add(value);
+		long current;
+		while(value > (current = this.max.get()) && !this.max.compareAndSet(current, value)){
+			//outra thread alterou o mximo, tenta novamente
+		}
+	}
+
+	/**
+	 * Registra o tempo em microsegundos decorrido desde o incio informado.
+	 * @param startNanos valor de System.nanoTime() no incio da operao
+	 */
+	public void updateElapsed(long startNanos){
+		update((System.nanoTime() - startNanos) / 1000);
+	}
+
+	static int index(long value) {
+		if(value < SUB_BUCKETS){
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	static long upperBound(int index) {
+		if(index < SUB_BUCKETS){
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	/**
+	 * @param percentile percentil entre 0 e 100, ex: 99.9
+	 * @return valor aproximado abaixo do qual est o percentual informado dos registros, zero se no houver registros
+	 */
+	public long getPercentile(double percentile){
+		if(percentile < 0 || percentile > 100){
+			throw new IllegalArgumentException("Parameter percentile must be between 0 and 100.");
+		}
+		long[] snapshot = new long[this.buckets.length()];
+		long total = 0;
+		for(int i = 0; i < snapshot.length; i++){
+			snapshot[i] = this.buckets.get(i);
+			total += snapshot[i];
+		}
+		if(total == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long accumulated = 0;
+		for(int i = 0; i < snapshot.length; i++){
+			accumulated += snapshot[i];
+			if(accumulated >= rank){
+				return Math.min(upperBound(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	@Override
+	public long getCount(){
+		return this.count.getCount();
+	}
+
+	@Override
+	public double getMean(){
+		long count = getCount();
+		return count == 0 ? 0 : (double) this.sum.getCount() / count;
+	}
+
+	@Override
+	public long getMax(){
+		return this.max.get();
+	}
+
+	@Override
+	public long get50thPercentile(){
+		return getPercentile(50);
+	}
+
+	@Override
+	public long get95thPercentile(){
+		return getPercentile(95);
+	}
+
+	@Override
+	public long get99thPercentile(){
+		return getPercentile(99);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + String.format("%.1f", getMean()) + ", p50=" + get50thPercentile()
+				+ ", p95=" + get95thPercentile() + ", p99=" + get99thPercentile() + ", max=" + getMax();
+	}
+}
@@ -0,0 +1,19 @@
+package org.reichel.metrics;
+
+/**
+ * Atributos de um {@link Histogram} publicados via JMX.
+ */
+public interface HistogramMBean {
+
+	long getCount();
+
+	double getMean();
+
+	long getMax();
+
+	long get50thPercentile();
+
+	long get95thPercentile();
+
+	long get99thPercentile();
+}
@@ -0,0 +1,190 @@
+package org.reichel.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Registro de mtricas por nome. Nenhum registro  publicado via JMX automaticamente, a aplicao decide
+ * quando publicar, ex: no incio do main:
+ * <pre>
+ *   MetricsRegistry.getDefault().publish();
+ * </pre>
+ * Depois disso cada mtrica aparece no jconsole/VisualVM como org.reichel:type=Counter|Histogram|Gauge,name=nome.
+ * Mtricas registradas:
+ * <ul>
+ * <li>jar.scanned, jar.scan.rate (jars/s por varredura), jar.manifest.time (s), jar.extract.entries, jar.extract.bytes;</li>
+ * <li>download.files, download.bytes, download.time (s), download.rate (KB/s por arquivo), download.active;</li>
+ * <li>exec.started, exec.failed (no iniciados ou com cdigo de sada diferente de zero), exec.time (s), exec.running;</li>
+ * <li>find.walks, find.files, find.time (s), find.cache.hits, find.cache.misses;</li>
+ * <li>config.reloads, config.saves, config.save.failures, config.save.time (s).</li>
+ * </ul>
+ */
+public class MetricsRegistry {
+
+	private static final Logger logger = Logger.getLogger(MetricsRegistry.class);
+
+	public static final String DOMAIN = "org.reichel";
+
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+	private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<String, Object>();
+
+	private MBeanServer server;
+
+	public static MetricsRegistry getDefault(){
+		return DEFAULT;
+	}
+
+	public Counter counter(String name){
+		Object metric = lookup(name);
+		return metric != null ? cast(name, metric, Counter.class) : register(name, new Counter(), Counter.class);
+	}
+
+	public Histogram histogram(String name){
+		Object metric = lookup(name);
+		return metric != null ? cast(name, metric, Histogram.class) : register(name, new Histogram(), Histogram.class);
+	}
+
+	/**
+	 * @param name nome da mtrica
+	 * @param gauge valor consultado a cada leitura
+	 * @return o gauge registrado, se j existir um com o mesmo nome o existente  mantido
+	 */
+	public Gauge gauge(String name, Gauge gauge){
+		if(gauge == null){
+			throw new IllegalArgumentException("Parameter gauge cannot be null.");
+		}
+		Object metric = lookup(name);
+		return metric != null ? cast(name, metric, Gauge.class) : register(name, gauge, Gauge.class);
+	}
+
+	private Object lookup(String name) {
+		if(name == null || "".equals(name)){
+			throw new IllegalArgumentException("Parameter name cannot be null or empty.");
+		}
+		return this.metrics.get(name);
+	}
+
+	private <T> T register(String name, T metric, Class<T> type) {
+		Object previous = this.metrics.putIfAbsent(name, metric);
+		if(previous != null){
+			return cast(name, previous, type);
+		}
+		synchronized (this) {
+			if(this.server != null){
+				registerMBean(name, metric);
+			}
+		}
+		return metric;
+	}
+
+	private <T> T cast(String name, Object metric, Class<T> type) {
+		if(!type.isInstance(metric)){
+			throw new IllegalArgumentException("Metric '" + name + "' is already registered as " + typeName(metric) + ".");
+		}
+		return type.cast(metric);
+	}
+
+	/**
+	 * Publica as mtricas no MBeanServer da plataforma.
+	 * @return a instancia de MetricsRegistry
+	 * @see #publish(MBeanServer)
+	 */
+	public MetricsRegistry publish(){
+		return publish(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	/**
+	 * Publica as mtricas existentes e as que forem criadas depois como MBeans.
+	 * @param server MBeanServer onde as mtricas sero publicadas
+	 * @return a instancia de MetricsRegistry
+	 */
+	public synchronized MetricsRegistry publish(MBeanServer server){
+		if(server == null){
+			throw new IllegalArgumentException("Parameter server cannot be null.");
+		}
+		unpublish();
+		this.server = server;
+		for(Entry<String, Object> metric : this.metrics.entrySet()){
+			registerMBean(metric.getKey(), metric.getValue());
+		}
+		return this;
+	}
+
+	public synchronized void unpublish(){
+		if(this.server == null){
+			return;
+		}
+		for(Entry<String, Object> metric : this.metrics.entrySet()){
+			try {
+				ObjectName objectName = objectName(metric.getKey(), metric.getValue());
+				if(this.server.isRegistered(objectName)){
+					this.server.unregisterMBean(objectName);
+				}
+			} catch (JMException e) {
+				logger.error("Problemas ao remover mtrica '" + metric.getKey() + "': " + e.getMessage());
+			}
+		}
+		this.server = null;
+	}
+
+	private void registerMBean(String name, Object metric) {
+		try {
+			ObjectName objectName = objectName(name, metric);
+			if(this.server.isRegistered(objectName)){
+				logger.warn("Mtrica '" + name + "' j publicada por outro registro, ignorada.");
+				return;
+			}
+			this.server.registerMBean(mbean(metric), objectName);
+		} catch (JMException e) {
+			logger.error("Problemas ao publicar mtrica '" + name + "': " + e.getMessage());
+		}
+	}
+
+	private StandardMBean mbean(Object metric) throws JMException {
+		if(metric instanceof Counter){
+			return new StandardMBean((Counter) metric, CounterMBean.class);
+		}
+		if(metric instanceof Histogram){
+			return new StandardMBean((Histogram) metric, HistogramMBean.class);
+		}
+		return new StandardMBean((Gauge) metric, Gauge.class);
+	}
+
+	private ObjectName objectName(String name, Object metric) throws JMException {
+		return new ObjectName(DOMAIN + ":type=" + typeName(metric) + ",name=" + name);
+	}
+
+	private static String typeName(Object metric) {
+		return metric instanceof Counter ? "Counter" : metric instanceof Histogram ? "Histogram" : "Gauge";
+	}
+
+	/**
+	 * @return viso ordenada por nome de todas as mtricas
+	 */
+	public SortedMap<String, Object> getMetrics(){
+		return Collections.unmodifiableSortedMap(new TreeMap<String, Object>(this.metrics));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for(Entry<String, Object> metric : getMetrics().entrySet()){
+			Object value = metric.getValue();
+			result.append(metric.getKey()).append(": ").append(value instanceof Gauge ? ((Gauge) value).getValue() : value).append('\n');
+		}
+		return result.toString();
+	}
+}
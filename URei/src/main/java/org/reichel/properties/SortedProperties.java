@@ -1,23 +1,571 @@
 package org.reichel.properties;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.AbstractCollection;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.AbstractSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.Vector;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
+/**
+ * Properties com as chaves sempre em ordem alfabtica.
+ * O contedo fica em um mapa ordenado imutvel publicado atravs de uma AtomicReference: leituras,
+ * iteraes e {@link #store(java.io.Writer, String)} trabalham sobre um snapshot consistente sem
+ * bloquear ningum e sem copiar ou ordenar as chaves, enquanto cada escrita publica um novo mapa.
+ * Indicado para configuraes, que so muito mais lidas do que alteradas.
+ * As vises keySet(), values() e entrySet() acompanham o mapa atual, cada iterao percorre o snapshot do seu incio;
+ * como no Hashtable aceitam remoes e Entry.setValue(), mas no incluses.
+ */
 public class SortedProperties extends Properties {
-	
+
 	private static final long serialVersionUID = 1L;
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	public synchronized java.util.Enumeration<Object> keys() {
-		Enumeration<Object> keysEnum = super.keys();
-		Vector<String> keyList = new Vector<String>();
-		while (keysEnum.hasMoreElements()) {
-			keyList.add((String) keysEnum.nextElement());
-		}
-		Collections.sort(keyList);
-		Enumeration elements = keyList.elements();
-		return elements;
-	};
+	private final AtomicReference<SortedMap<Object, Object>> map = new AtomicReference<SortedMap<Object, Object>>(Collections.unmodifiableSortedMap(new TreeMap<Object, Object>()));
+
+	private SortedMap<Object, Object> snapshot(){
+		return this.map.get();
+	}
+
+	private boolean publish(SortedMap<Object, Object> current, TreeMap<Object, Object> updated){
+		return this.map.compareAndSet(current, Collections.unmodifiableSortedMap(updated));
+	}
+
+	@Override
+	public Object get(Object key) {
+		return snapshot().get(key);
+	}
+
+	@Override
+	public String getProperty(String key) {
+		Object value = get(key);
+		String result = value instanceof String ? (String) value : null;
+		return result == null && this.defaults != null ? this.defaults.getProperty(key) : result;
+	}
+
+	@Override
+	public String getProperty(String key, String defaultValue) {
+		String value = getProperty(key);
+		return value == null ? defaultValue : value;
+	}
+
+	@Override
+	public Object put(Object key, Object value) {
+		if(key == null || value == null){
+			throw new NullPointerException();
+		}
+		SortedMap<Object, Object> current;
+		TreeMap<Object, Object> updated;
+		do {
+			current = snapshot();
+			updated = new TreeMap<Object, Object>(current);
+			updated.put(key, value);
+		} while(!publish(current, updated));
+		return current.get(key);
+	}
+
+	@Override
+	public void putAll(Map<? extends Object, ? extends Object> t) {
+		SortedMap<Object, Object> current;
+		TreeMap<Object, Object> updated;
+		do {
+			current = snapshot();
+			updated = new TreeMap<Object, Object>(current);
+			for(Entry<? extends Object, ? extends Object> entry : t.entrySet()){
+				if(entry.getKey() == null || entry.getValue() == null){
+					throw new NullPointerException();
+				}
+				updated.put(entry.getKey(), entry.getValue());
+			}
+		} while(!publish(current, updated));
+	}
+
+	@Override
+	public Object remove(Object key) {
+		SortedMap<Object, Object> current;
+		TreeMap<Object, Object> updated;
+		do {
+			current = snapshot();
+			if(!current.containsKey(key)){
+				return null;
+			}
+			updated = new TreeMap<Object, Object>(current);
+			updated.remove(key);
+		} while(!publish(current, updated));
+		return current.get(key);
+	}
+
+	@Override
+	public Object getOrDefault(Object key, Object defaultValue) {
+		Object value = snapshot().get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super Object, ? super Object> action) {
+		if(action == null){
+			throw new NullPointerException();
+		}
+		for(Entry<Object, Object> entry : snapshot().entrySet()){
+			action.accept(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public void replaceAll(BiFunction<? super Object, ? super Object, ? extends Object> function) {
+		if(function == null){
+			throw new NullPointerException();
+		}
+		SortedMap<Object, Object> current;
+		TreeMap<Object, Object> updated;
+		do {
+			current = snapshot();
+			updated = new TreeMap<Object, Object>(current);
+			for(Entry<Object, Object> entry : updated.entrySet()){
+				Object value = function.apply(entry.getKey(), entry.getValue());
+				if(value == null){
+					throw new NullPointerException();
+				}
+				entry.setValue(value);
+			}
+		} while(!publish(current, updated));
+	}
+
+	@Override
+	public Object putIfAbsent(Object key, Object value) {
+		if(key == null || value == null){
+			throw new NullPointerException();
+		}
+		SortedMap<Object, Object> current;
+		TreeMap<Object, Object> updated;
+		do {
+			current = snapshot();
+			Object existing = current.get(key);
+			if(existing != null){
+				return existing;
+			}
+			updated = new TreeMap<Object, Object>(current);
+			updated.put(key, value);
+		} while(!publish(current, updated));
+		return null;
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		if(key == null || value == null){
+			return false;
+		}
+		SortedMap<Object, Object> current;
+		TreeMap<Object, Object> updated;
+		do {
+			current = snapshot();
+			if(!value.equals(current.get(key))){
+				return false;
+			}
+			updated = new TreeMap<Object, Object>(current);
+			updated.remove(key);
+		} while(!publish(current, updated));
+		return true;
+	}
+
+	@Override
+	public boolean replace(Object key, Object oldValue, Object newValue) {
+		if(key == null || oldValue == null || newValue == null){
+			throw new NullPointerException();
+		}
+		SortedMap<Object, Object> current;
+		TreeMap<Object, Object> updated;
+		do {
+			current = snapshot();
+			if(!oldValue.equals(current.get(key))){
+				return false;
+			}
+			updated = new TreeMap<Object, Object>(current);
+			updated.put(key, newValue);
+		} while(!publish(current, updated));
+		return true;
+	}
+
+	@Override
+	public Object replace(Object key, Object value) {
+		if(key == null || value == null){
+			throw new NullPointerException();
+		}
+		SortedMap<Object, Object> current;
+		TreeMap<Object, Object> updated;
+		Object existing;
+		do {
+			current = snapshot();
+			existing = current.get(key);
+			if(existing == null){
+				return null;
+			}
+			updated = new TreeMap<Object, Object>(current);
+			updated.put(key, value);
+		} while(!publish(current, updated));
+		return existing;
+	}
+
+	/**
+	 * A funo  chamada fora da publicao e pode ser descartada se outra thread incluir a chave antes.
+	 */
+	@Override
+	public Object computeIfAbsent(Object key, Function<? super Object, ? extends Object> mappingFunction) {
+		if(key == null || mappingFunction == null){
+			throw new NullPointerException();
+		}
+		Object existing = snapshot().get(key);
+		if(existing != null){
+			return existing;
+		}
+		Object value = mappingFunction.apply(key);
+		if(value == null){
+			return null;
+		}
+		existing = putIfAbsent(key, value);
+		return existing == null ? value : existing;
+	}
+
+	/**
+	 * Como nos demais mtodos compute, a funo pode ser chamada mais de uma vez se outra thread alterar o mapa ao mesmo tempo.
+	 */
+	@Override
+	public Object computeIfPresent(Object key, BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+		if(key == null || remappingFunction == null){
+			throw new NullPointerException();
+		}
+		SortedMap<Object, Object> current;
+		TreeMap<Object, Object> updated;
+		Object value;
+		do {
+			current = snapshot();
+			Object existing = current.get(key);
+			if(existing == null){
+				return null;
+			}
+			value = remappingFunction.apply(key, existing);
+			updated = new TreeMap<Object, Object>(current);
+			if(value == null){
+				updated.remove(key);
+			} else {
+				updated.put(key, value);
+			}
+		} while(!publish(current, updated));
+		return value;
+	}
+
+	@Override
+	public Object compute(Object key, BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+		if(key == null || remappingFunction == null){
+			throw new NullPointerException();
+		}
+		SortedMap<Object, Object> current;
+		TreeMap<Object, Object> updated;
+		Object value;
+		do {
+			current = snapshot();
+			Object existing = current.get(key);
+			value = remappingFunction.apply(key, existing);
+			if(value == null && existing == null){
+				return null;
+			}
+			updated = new TreeMap<Object, Object>(current);
+			if(value == null){
+				updated.remove(key);
+			} else {
+				updated.put(key, value);
+			}
+		} while(!publish(current, updated));
+		return value;
+	}
+
+	@Override
+	public Object merge(Object key, Object value, BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+		if(key == null || value == null || remappingFunction == null){
+			throw new NullPointerException();
+		}
+		SortedMap<Object, Object> current;
+		TreeMap<Object, Object> updated;
+		Object merged;
+		do {
+			current = snapshot();
+			Object existing = current.get(key);
+			merged = existing == null ? value : remappingFunction.apply(existing, value);
+			updated = new TreeMap<Object, Object>(current);
+			if(merged == null){
+				updated.remove(key);
+			} else {
+				updated.put(key, merged);
+			}
+		} while(!publish(current, updated));
+		return merged;
+	}
+
+	@Override
+	public void clear() {
+		this.map.set(Collections.unmodifiableSortedMap(new TreeMap<Object, Object>()));
+	}
+
+	/**
+	 * L todas as propriedades e as publica de uma s vez.
+	 */
+	@Override
+	public void load(Reader reader) throws IOException {
+		Properties loaded = new Properties();
+		loaded.load(reader);
+		putAll(loaded);
+	}
+
+	/**
+	 * L todas as propriedades e as publica de uma s vez.
+	 */
+	@Override
+	public void load(InputStream inStream) throws IOException {
+		Properties loaded = new Properties();
+		loaded.load(inStream);
+		putAll(loaded);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return snapshot().containsKey(key);
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		return snapshot().containsValue(value);
+	}
+
+	@Override
+	public boolean contains(Object value) {
+		return containsValue(value);
+	}
+
+	@Override
+	public int size() {
+		return snapshot().size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return snapshot().isEmpty();
+	}
+
+	@Override
+	public Enumeration<Object> keys() {
+		return Collections.enumeration(snapshot().keySet());
+	}
+
+	@Override
+	public Enumeration<Object> elements() {
+		return Collections.enumeration(snapshot().values());
+	}
+
+	@Override
+	public Enumeration<?> propertyNames() {
+		return Collections.enumeration(stringPropertyNames());
+	}
+
+	@Override
+	public Set<String> stringPropertyNames() {
+		Set<String> result = new TreeSet<String>();
+		if(this.defaults != null){
+			result.addAll(this.defaults.stringPropertyNames());
+		}
+		for(Entry<Object, Object> entry : snapshot().entrySet()){
+			if(entry.getKey() instanceof String && entry.getValue() instanceof String){
+				result.add((String) entry.getKey());
+			}
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	@Override
+	public Set<Object> keySet() {
+		return new AbstractSet<Object>() {
+			@Override
+			public Iterator<Object> iterator() {
+				return new SnapshotIterator<Object>() {
+					@Override
+					Object next(Entry<Object, Object> entry) {
+						return entry.getKey();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return SortedProperties.this.size();
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+
+			@Override
+			public boolean remove(Object o) {
+				return SortedProperties.this.remove(o) != null;
+			}
+
+			@Override
+			public void clear() {
+				SortedProperties.this.clear();
+			}
+		};
+	}
+
+	@Override
+	public Collection<Object> values() {
+		return new AbstractCollection<Object>() {
+			@Override
+			public Iterator<Object> iterator() {
+				return new SnapshotIterator<Object>() {
+					@Override
+					Object next(Entry<Object, Object> entry) {
+						return entry.getValue();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return SortedProperties.this.size();
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return containsValue(o);
+			}
+
+			@Override
+			public void clear() {
+				SortedProperties.this.clear();
+			}
+		};
+	}
+
+	@Override
+	public Set<Entry<Object, Object>> entrySet() {
+		return new AbstractSet<Entry<Object, Object>>() {
+			@Override
+			public Iterator<Entry<Object, Object>> iterator() {
+				return new SnapshotIterator<Entry<Object, Object>>() {
+					@Override
+					Entry<Object, Object> next(final Entry<Object, Object> entry) {
+						return new SimpleEntry<Object, Object>(entry) {
+							private static final long serialVersionUID = 1L;
+
+							@Override
+							public Object setValue(Object value) {
+								put(getKey(), value);
+								return super.setValue(value);
+							}
+						};
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return SortedProperties.this.size();
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				if(!(o instanceof Entry)){
+					return false;
+				}
+				Entry<?, ?> entry = (Entry<?, ?>) o;
+				Object value = entry.getKey() == null ? null : get(entry.getKey());
+				return value != null && value.equals(entry.getValue());
+			}
+
+			@Override
+			public boolean remove(Object o) {
+				if(!(o instanceof Entry)){
+					return false;
+				}
+				Entry<?, ?> entry = (Entry<?, ?>) o;
+				return SortedProperties.this.remove(entry.getKey(), entry.getValue());
+			}
+
+			@Override
+			public void clear() {
+				SortedProperties.this.clear();
+			}
+		};
+	}
+
+	/**
+	 * Percorre o snapshot do momento da criao, remove() remove a chave do mapa atual.
+	 */
+	private abstract class SnapshotIterator<E> implements Iterator<E> {
+
+		private final Iterator<Entry<Object, Object>> iterator = snapshot().entrySet().iterator();
+
+		private Entry<Object, Object> last;
+
+		abstract E next(Entry<Object, Object> entry);
+
+		@Override
+		public boolean hasNext() {
+			return this.iterator.hasNext();
+		}
+
+		@Override
+		public E next() {
+			this.last = this.iterator.next();
+			return next(this.last);
+		}
+
+		@Override
+		public void remove() {
+			if(this.last == null){
+				throw new IllegalStateException();
+			}
+			SortedProperties.this.remove(this.last.getKey());
+			this.last = null;
+		}
+	}
+
+	@Override
+	public Object clone() {
+		SortedProperties clone = new SortedProperties();
+		clone.map.set(snapshot());
+		clone.defaults = this.defaults;
+		return clone;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(o == this){
+			return true;
+		}
+		return o instanceof Map && snapshot().equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		return snapshot().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
 }
@@ -0,0 +1,147 @@
+package org.reichel.simulation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.reichel.jar.JarTypeEnum;
+import org.reichel.jar.JarUtils;
+
+/**
+ * Gera jars com contedo aleatrio e o manifesto de verses correspondente, no formato lido por
+ * {@link JarUtils#getJarVersions(Properties)}, para simulaes de atualizao.
+ * Os jars ficam em "lib/modN/artifactM.jar" com a verso "major.0.M", o mesmo gerador com outra verso
+ * produz a mesma estrutura, ex: verso instalada nos clientes e verso disponvel no servidor.
+ */
+public class ArtifactGenerator {
+
+	public static final String MANIFEST_FILE = "versions.properties";
+
+	private int jars = 50;
+
+	private int entriesPerJar = 20;
+
+	private int entryBytes = 2048;
+
+	private int explodedEvery = 0;
+
+	private long seed = 1;
+
+	public ArtifactGenerator jars(int jars){
+		if(jars < 1){
+			throw new IllegalArgumentException("Parameter jars must be greater than zero.");
+		}
+		this.jars = jars;
+		return this;
+	}
+
+	public ArtifactGenerator entriesPerJar(int entriesPerJar){
+		if(entriesPerJar < 0){
+			throw new IllegalArgumentException("Parameter entriesPerJar cannot be negative.");
+		}
+		this.entriesPerJar = entriesPerJar;
+		return this;
+	}
+
+	public ArtifactGenerator entryBytes(int entryBytes){
+		if(entryBytes < 0){
+			throw new IllegalArgumentException("Parameter entryBytes cannot be negative.");
+		}
+		this.entryBytes = entryBytes;
+		return this;
+	}
+
+	/**
+	 * @param explodedEvery um a cada N jars  do tipo {@link JarTypeEnum#JAR_EXPLODED}, zero para nenhum
+	 * @return a instancia de ArtifactGenerator
+	 */
+	public ArtifactGenerator explodedEvery(int explodedEvery){
+		if(explodedEvery < 0){
+			throw new IllegalArgumentException("Parameter explodedEvery cannot be negative.");
+		}
+		this.explodedEvery = explodedEvery;
+		return this;
+	}
+
+	public ArtifactGenerator seed(long seed){
+		this.seed = seed;
+		return this;
+	}
+
+	public int getJars() {
+		return jars;
+	}
+
+	/**
+	 * @return caminho do jar relativo ao repositrio, separado por '/'
+	 */
+	public String getPath(int jar){
+		return getFolder(jar) + "/" + getFileName(jar);
+	}
+
+	private String getFolder(int jar){
+		return "lib/mod" + (jar % 10);
+	}
+
+	private String getFileName(int jar){
+		return "artifact" + jar + ".jar";
+	}
+
+	private JarTypeEnum getType(int jar){
+		return this.explodedEvery > 0 && jar % this.explodedEvery == 0 ? JarTypeEnum.JAR_EXPLODED : JarTypeEnum.JAR;
+	}
+
+	/**
+	 * Grava os jars e o arquivo {@link #MANIFEST_FILE} no repositrio.
+	 * @param repository diretrio de destino
+	 * @param major verso major de todos os jars
+	 * @return manifesto de verses gravado
+	 */
+	public Properties generate(File repository, int major) throws IOException {
+		Properties properties = new Properties();
+		for(int jar = 0; jar < this.jars; jar++){
+			String version = major + ".0." + jar;
+			write(new File(repository, getPath(jar)), jar, version);
+			String key = "artifact" + jar;
+			properties.setProperty(key + JarUtils.PROPERTIES_VERSION, version);
+			properties.setProperty(key + JarUtils.PROPERTIES_FILENAME, getFileName(jar));
+			properties.setProperty(key + JarUtils.PROPERTIES_PATH, getFolder(jar));
+			properties.setProperty(key + JarUtils.PROPERTIES_TYPE, getType(jar).getType());
+		}
+		OutputStream os = new FileOutputStream(new File(repository, MANIFEST_FILE));
+		try {
+			properties.store(os, "Gerado por ArtifactGenerator");
+		} finally {
+			os.close();
+		}
+		return properties;
+	}
+
+	private void write(File target, int jar, String version) throws IOException {
+		target.getParentFile().mkdirs();
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, version);
+		manifest.getMainAttributes().putValue("Jar-Type", getType(jar).getType());
+		Random random = new Random(this.seed * 31 + jar);
+		byte[] content = new byte[this.entryBytes];
+		JarOutputStream jos = new JarOutputStream(new FileOutputStream(target), manifest);
+		try {
+			for(int entry = 0; entry < this.entriesPerJar; entry++){
+				random.nextBytes(content);
+				jos.putNextEntry(new JarEntry("artifact" + jar + "/Class" + entry + ".class"));
+				jos.write(content);
+				jos.closeEntry();
+			}
+		} finally {
+			jos.close();
+		}
+	}
+}
@@ -0,0 +1,367 @@
+package org.reichel.simulation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.reichel.command.output.Output;
+import org.reichel.download.BundleFetch;
+import org.reichel.download.DownloadFile;
+import org.reichel.jar.JarTypeEnum;
+import org.reichel.jar.JarUtils;
+import org.reichel.jar.JarVersion;
+import org.reichel.metrics.Histogram;
+
+/**
+ * Simula vrios clientes atualizando ao mesmo tempo a partir de um {@link StandInServer}, para dimensionar o servidor
+ * e identificar regresses no caminho de atualizao.
+ * Cada cliente executa o mesmo fluxo do atualizador: baixa o manifesto de verses, varre o seu diretrio com
+ * {@link JarUtils#getJarVersions(String, Map)}, compara as verses, baixa os jars mais novos com {@link DownloadFile}
+ * (ou todos em uma requisio com {@link BundleFetch}, ver {@link #bundle(boolean)}) e extrai os jars do tipo
+ * {@link JarTypeEnum#JAR_EXPLODED} com {@link JarUtils#extractFiles(String, String)}.
+ * Exemplo de utilizao:
+ * <pre>
+ *   SimulationReport report = new LoadSimulation()
+ *       .clients(200).concurrency(100)
+ *       .latency(80).bandwidth(512 * 1024)
+ *       .generator(new ArtifactGenerator().jars(40).explodedEvery(5))
+ *       .run();
+ *   System.out.println(report);
+ * </pre>
+ * Ou pela linha de comando: LoadSimulation clients=200 concurrency=100 latency=80 bandwidth=524288 jars=40
+ */
+public class LoadSimulation {
+
+	private static final Logger logger = Logger.getLogger(LoadSimulation.class);
+
+	private static final int MAX_ERRORS = 10;
+
+	private int clients = 20;
+
+	private int concurrency = 0;
+
+	private double outdated = 1.0;
+
+	private long latencyMillis = 0;
+
+	private long bytesPerSecond = 0;
+
+	private double failureRate = 0;
+
+	private int serverThreads = 16;
+
+	private boolean bundle = false;
+
+	private ArtifactGenerator generator = new ArtifactGenerator();
+
+	private File workFolder;
+
+	public LoadSimulation clients(int clients){
+		if(clients < 1){
+			throw new IllegalArgumentException("Parameter clients must be greater than zero.");
+		}
+		this.clients = clients;
+		return this;
+	}
+
+	/**
+	 * @param concurrency clientes atualizando ao mesmo tempo, zero para todos
+	 * @return a instancia de LoadSimulation
+	 */
+	public LoadSimulation concurrency(int concurrency){
+		if(concurrency < 0){
+			throw new IllegalArgumentException("Parameter concurrency cannot be negative.");
+		}
+		this.concurrency = concurrency;
+		return this;
+	}
+
+	/**
+	 * @param outdated frao entre 0 e 1 dos jars desatualizados em cada cliente, os demais j esto na verso do servidor
+	 * @return a instancia de LoadSimulation
+	 */
+	public LoadSimulation outdated(double outdated){
+		if(outdated < 0 || outdated > 1){
+			throw new IllegalArgumentException("Parameter outdated must be between 0 and 1.");
+		}
+		this.outdated = outdated;
+		return this;
+	}
+
+	/**
+	 * @see StandInServer#latency(long)
+	 */
+	public LoadSimulation latency(long latencyMillis){
+		this.latencyMillis = latencyMillis;
+		return this;
+	}
+
+	/**
+	 * @see StandInServer#bandwidth(long)
+	 */
+	public LoadSimulation bandwidth(long bytesPerSecond){
+		this.bytesPerSecond = bytesPerSecond;
+		return this;
+	}
+
+	/**
+	 * @see StandInServer#failureRate(double)
+	 */
+	public LoadSimulation failureRate(double failureRate){
+		this.failureRate = failureRate;
+		return this;
+	}
+
+	public LoadSimulation serverThreads(int serverThreads){
+		this.serverThreads = serverThreads;
+		return this;
+	}
+
+	/**
+	 * @param bundle true para baixar os jars desatualizados de cada cliente em uma nica requisio com {@link BundleFetch}, false para um {@link DownloadFile} por jar
+	 * @return a instancia de LoadSimulation
+	 */
+	public LoadSimulation bundle(boolean bundle){
+		this.bundle = bundle;
+		return this;
+	}
+
+	public LoadSimulation generator(ArtifactGenerator generator){
+		if(generator == null){
+			throw new IllegalArgumentException("Parameter generator cannot be null.");
+		}
+		this.generator = generator;
+		return this;
+	}
+
+	/**
+	 * @param workFolder diretrio do repositrio e dos clientes, mantido ao final; por padro um diretrio temporrio removido ao final
+	 * @return a instancia de LoadSimulation
+	 */
+	public LoadSimulation workFolder(String workFolder){
+		this.workFolder = workFolder == null ? null : new File(workFolder);
+		return this;
+	}
+
+	/**
+	 * Prepara o repositrio e os diretrios dos clientes, que no entram na medio, e libera todos os clientes ao mesmo tempo.
+	 * @return tempos, vazo e falhas da simulao
+	 * @throws IOException caso a preparao falhe
+	 * @throws InterruptedException caso a thread seja interrompida
+	 */
+	public SimulationReport run() throws IOException, InterruptedException {
+		boolean temporary = this.workFolder == null;
+		File work = temporary ? Files.createTempDirectory("urei-simulation").toFile() : this.workFolder;
+		StandInServer server = new StandInServer(new File(work, "repo").getPath())
+			.latency(this.latencyMillis).bandwidth(this.bytesPerSecond).failureRate(this.failureRate).threads(this.serverThreads);
+		try {
+			this.generator.generate(new File(work, "repo"), 2);
+			this.generator.generate(new File(work, "baseline"), 1);
+			List<File> roots = new ArrayList<File>();
+			for(int client = 0; client < this.clients; client++){
+				roots.add(prepareClient(work, client));
+			}
+			server.start();
+			return simulate(server, roots);
+		} finally {
+			server.stop();
+			if(temporary){
+				deleteTree(work.toPath());
+			}
+		}
+	}
+
+	private File prepareClient(File work, int client) throws IOException {
+		File root = new File(work, "clients" + File.separatorChar + "client" + client);
+		int current = (int) Math.round(this.generator.getJars() * (1 - this.outdated));
+		for(int jar = 0; jar < this.generator.getJars(); jar++){
+			String path = this.generator.getPath(jar);
+			File target = new File(root, path);
+			target.getParentFile().mkdirs();
+			File source = new File(new File(work, jar < current ? "repo" : "baseline"), path);
+			Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return root;
+	}
+
+	private SimulationReport simulate(final StandInServer server, List<File> roots) throws InterruptedException {
+		int threads = this.concurrency == 0 ? roots.size() : Math.min(this.concurrency, roots.size());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final Histogram updateMillis = new Histogram();
+		final AtomicInteger failed = new AtomicInteger();
+		final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch startGate = new CountDownLatch(1);
+		for(final File root : roots){
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						startGate.await();
+						long start = System.nanoTime();
+						update(server.getUrl(), server.getBundleUrl(), root);
+						updateMillis.update((System.nanoTime() - start) / 1000000);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} catch (Exception e) {
+						failed.incrementAndGet();
+						if(errors.size() < MAX_ERRORS){
+							errors.add(root.getName() + ": " + e.getClass().getSimpleName() + ": " + e.getMessage());
+						}
+					}
+				}
+			});
+		}
+		long start = System.nanoTime();
+		startGate.countDown();
+		executor.shutdown();
+		while(!executor.awaitTermination(1, TimeUnit.MINUTES)){
+			logger.info("Aguardando clientes, " + updateMillis.getCount() + " concludos e " + failed.get() + " com falha.");
+		}
+		long wallMillis = (System.nanoTime() - start) / 1000000;
+		return new SimulationReport(roots.size(), failed.get(), updateMillis, wallMillis, server, errors);
+	}
+
+	/**
+	 * Fluxo de atualizao de um cliente.
+	 */
+	private void update(String remoteTargetFolder, String bundleUrl, File root) throws IOException {
+		Output<Integer> output = new Output<Integer>() {
+			@Override
+			public void output(Integer output) {
+			}
+		};
+		JarUtils jarUtils = new JarUtils();
+		File manifestFolder = new File(root.getParentFile(), root.getName() + ".manifest");
+		File manifest = new DownloadFile(output, remoteTargetFolder).download(ArtifactGenerator.MANIFEST_FILE, manifestFolder.getPath()).getDownloadedFile();
+		Properties properties = new Properties();
+		InputStream is = new FileInputStream(manifest);
+		try {
+			properties.load(is);
+		} finally {
+			is.close();
+		}
+		Map<String, JarVersion> remoteVersions = jarUtils.getJarVersions(properties);
+		Map<String, JarVersion> localVersions = jarUtils.getJarVersions(root.getPath(), new HashMap<String, JarVersion>());
+		List<Entry<String, JarVersion>> outdated = new ArrayList<Entry<String, JarVersion>>();
+		for(Entry<String, JarVersion> remote : remoteVersions.entrySet()){
+			JarVersion local = localVersions.get(remote.getKey());
+			if(local == null || remote.getValue().compareTo(local) > 0){
+				outdated.add(remote);
+			}
+		}
+		if(outdated.isEmpty()){
+			return;
+		}
+		if(this.bundle){
+			List<String> paths = new ArrayList<String>();
+			for(Entry<String, JarVersion> remote : outdated){
+				paths.add(remote.getKey().replace(File.separatorChar, '/'));
+			}
+			BundleFetch fetch = new BundleFetch(output, bundleUrl).fetch(paths, root.getPath());
+			if(!fetch.getMissing().isEmpty()){
+				throw new IOException("Arquivos no recebidos no pacote: " + fetch.getMissing());
+			}
+		}
+		for(Entry<String, JarVersion> remote : outdated){
+			File target = this.bundle ? new File(root, remote.getKey()) : new DownloadFile(output, remoteTargetFolder)
+				.download(remote.getKey().replace(File.separatorChar, '/'), root.getPath()).getDownloadedFile();
+			JarVersion downloaded = target.isFile() ? jarUtils.getJarVersion(root.getPath(), target.getPath()) : null;
+			if(downloaded == null || downloaded.compareTo(remote.getValue()) != 0){
+				throw new IOException("Verso baixada de '" + remote.getKey() + "'  '" + downloaded + "', esperado '" + remote.getValue() + "'");
+			}
+			if(remote.getValue().getJarTypeEnum() == JarTypeEnum.JAR_EXPLODED){
+				jarUtils.extractFilesStrict(target.getPath(), target.getParent());
+			}
+		}
+	}
+
+	private static void deleteTree(Path path) throws IOException {
+		if(!Files.exists(path)){
+			return;
+		}
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				if(e != null){
+					throw e;
+				}
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Executa a simulao pela linha de comando, parmetros no formato nome=valor:
+	 * clients, concurrency, outdated, latency (ms), bandwidth (bytes/s), failureRate, serverThreads,
+	 * bundle (true/false), jars, entriesPerJar, entryBytes, explodedEvery, workFolder.
+	 */
+	public static void main(String[] args) throws Exception {
+		LoadSimulation simulation = new LoadSimulation();
+		ArtifactGenerator generator = new ArtifactGenerator();
+		for(String arg : args){
+			int separator = arg.indexOf('=');
+			if(separator < 0){
+				throw new IllegalArgumentException("Parmetro '" + arg + "' fora do formato nome=valor.");
+			}
+			String name = arg.substring(0, separator);
+			String value = arg.substring(separator + 1);
+			if("clients".equals(name)){
+				simulation.clients(Integer.parseInt(value));
+			} else if("concurrency".equals(name)){
+				simulation.concurrency(Integer.parseInt(value));
+			} else if("outdated".equals(name)){
+				simulation.outdated(Double.parseDouble(value));
+			} else if("latency".equals(name)){
+				simulation.latency(Long.parseLong(value));
+			} else if("bandwidth".equals(name)){
+				simulation.bandwidth(Long.parseLong(value));
+			} else if("failureRate".equals(name)){
+				simulation.failureRate(Double.parseDouble(value));
+			} else if("serverThreads".equals(name)){
+				simulation.serverThreads(Integer.parseInt(value));
+			} else if("bundle".equals(name)){
+				simulation.bundle(Boolean.parseBoolean(value));
+			} else if("jars".equals(name)){
+				generator.jars(Integer.parseInt(value));
+			} else if("entriesPerJar".equals(name)){
+				generator.entriesPerJar(Integer.parseInt(value));
+			} else if("entryBytes".equals(name)){
+				generator.entryBytes(Integer.parseInt(value));
+			} else if("explodedEvery".equals(name)){
+				generator.explodedEvery(Integer.parseInt(value));
+			} else if("workFolder".equals(name)){
+				simulation.workFolder(value);
+			} else {
+				throw new IllegalArgumentException("Parmetro '" + name + "' desconhecido.");
+			}
+		}
+		System.out.println(simulation.generator(generator).run());
+	}
+}
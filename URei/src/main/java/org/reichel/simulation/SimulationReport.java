@@ -0,0 +1,112 @@
+package org.reichel.simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.reichel.metrics.Histogram;
+
+/**
+ * Resultado de uma {@link LoadSimulation}. Os percentis vm de um {@link Histogram} e ficam no mximo 12,5% acima do valor real.
+ */
+public class SimulationReport {
+
+	private final int clients;
+
+	private final int failedClients;
+
+	private final Histogram updateMillis;
+
+	private final long wallMillis;
+
+	private final long requests;
+
+	private final long sentBytes;
+
+	private final long failedRequests;
+
+	private final List<String> errors;
+
+	SimulationReport(int clients, int failedClients, Histogram updateMillis, long wallMillis, StandInServer server, List<String> errors) {
+		this.clients = clients;
+		this.failedClients = failedClients;
+		this.updateMillis = updateMillis;
+		this.wallMillis = wallMillis;
+		this.requests = server.getRequests();
+		this.sentBytes = server.getSentBytes();
+		this.failedRequests = server.getFailures();
+		this.errors = Collections.unmodifiableList(new ArrayList<String>(errors));
+	}
+
+	public int getClients() {
+		return clients;
+	}
+
+	public int getFailedClients() {
+		return failedClients;
+	}
+
+	/**
+	 * @return frao dos clientes cuja atualizao falhou
+	 */
+	public double getErrorRate() {
+		return clients == 0 ? 0 : (double) failedClients / clients;
+	}
+
+	/**
+	 * @return tempo de atualizao dos clientes concludos, em milisegundos
+	 */
+	public Histogram getUpdateMillis() {
+		return updateMillis;
+	}
+
+	public long getWallMillis() {
+		return wallMillis;
+	}
+
+	public long getRequests() {
+		return requests;
+	}
+
+	public long getFailedRequests() {
+		return failedRequests;
+	}
+
+	public long getSentBytes() {
+		return sentBytes;
+	}
+
+	public double getRequestsPerSecond() {
+		return wallMillis == 0 ? 0 : requests * 1000.0 / wallMillis;
+	}
+
+	public double getBytesPerSecond() {
+		return wallMillis == 0 ? 0 : sentBytes * 1000.0 / wallMillis;
+	}
+
+	/**
+	 * @return mensagens das primeiras falhas
+	 */
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		report.append("clientes: ").append(clients).append(", falhas: ").append(failedClients)
+			.append(String.format(" (%.1f%%)", getErrorRate() * 100)).append('\n');
+		report.append("atualizao (ms): p50=").append(updateMillis.get50thPercentile())
+			.append(" p95=").append(updateMillis.get95thPercentile())
+			.append(" p99=").append(updateMillis.get99thPercentile())
+			.append(" mximo=").append(updateMillis.getMax()).append('\n');
+		report.append("servidor: ").append(requests).append(" requisies")
+			.append(String.format(" (%.1f/s), %.2f MB/s, ", getRequestsPerSecond(), getBytesPerSecond() / 1024 / 1024))
+			.append(failedRequests).append(" com erro\n");
+		report.append("durao: ").append(wallMillis).append("ms");
+		for(String error : errors){
+			report.append('\n').append("  ").append(error);
+		}
+		return report.toString();
+	}
+}
@@ -0,0 +1,309 @@
+package org.reichel.simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.FilterOutputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.reichel.download.BundleHandler;
+import org.reichel.metrics.Counter;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Servidor HTTP local que substitui o servidor de atualizao nas simulaes, servindo os arquivos de um diretrio
+ * em "/repo/..." e em pacotes pelo {@link BundleHandler} em "/bundle". Permite simular a rede entre clientes e servidor:
+ * <ul>
+ * <li>latncia: espera antes de responder cada requisio, fora das threads do servidor;</li>
+ * <li>banda: limite de bytes por segundo de cada resposta;</li>
+ * <li>falhas: frao das requisies respondidas com erro 500.</li>
+ * </ul>
+ * A quantidade de threads limita as requisies atendidas ao mesmo tempo, como a capacidade do servidor real.
+ * A latncia  a da rede e no ocupa essas threads: a requisio s  entregue a elas depois da espera.
+ */
+public class StandInServer {
+
+	private static final Logger logger = Logger.getLogger(StandInServer.class);
+
+	public static final String CONTEXT = "/repo";
+
+	public static final String BUNDLE_CONTEXT = "/bundle";
+
+	private final Path repository;
+
+	private long latencyMillis = 0;
+
+	private long bytesPerSecond = 0;
+
+	private double failureRate = 0;
+
+	private int threads = 16;
+
+	private final Counter requests = new Counter();
+
+	private final Counter sentBytes = new Counter();
+
+	private final Counter failures = new Counter();
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	private ScheduledExecutorService delays;
+
+	/**
+	 * @param repositoryPath diretrio com os arquivos servidos
+	 */
+	public StandInServer(String repositoryPath){
+		if(repositoryPath == null){
+			throw new IllegalArgumentException("Parameter repositoryPath cannot be null.");
+		}
+		this.repository = new File(repositoryPath).getAbsoluteFile().toPath().normalize();
+	}
+
+	public StandInServer latency(long latencyMillis){
+		if(latencyMillis < 0){
+			throw new IllegalArgumentException("Parameter latencyMillis cannot be negative.");
+		}
+		this.latencyMillis = latencyMillis;
+		return this;
+	}
+
+	/**
+	 * @param bytesPerSecond limite de cada resposta, zero para no limitar
+	 * @return a instancia de StandInServer
+	 */
+	public StandInServer bandwidth(long bytesPerSecond){
+		if(bytesPerSecond < 0){
+			throw new IllegalArgumentException("Parameter bytesPerSecond cannot be negative.");
+		}
+		this.bytesPerSecond = bytesPerSecond;
+		return this;
+	}
+
+	/**
+	 * @param failureRate frao entre 0 e 1 das requisies respondidas com erro 500
+	 * @return a instancia de StandInServer
+	 */
+	public StandInServer failureRate(double failureRate){
+		if(failureRate < 0 || failureRate > 1){
+			throw new IllegalArgumentException("Parameter failureRate must be between 0 and 1.");
+		}
+		this.failureRate = failureRate;
+		return this;
+	}
+
+	public StandInServer threads(int threads){
+		if(threads < 1){
+			throw new IllegalArgumentException("Parameter threads must be greater than zero.");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Inicia o servidor em uma porta livre de 127.0.0.1.
+	 * @return a instancia de StandInServer
+	 */
+	public synchronized StandInServer start() throws IOException {
+		if(this.server != null){
+			throw new IllegalStateException("Servidor j iniciado em " + getUrl() + ".");
+		}
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		ShapingFilter filter = new ShapingFilter();
+		server.createContext(CONTEXT, new RepositoryHandler()).getFilters().add(filter);
+		server.createContext(BUNDLE_CONTEXT, new BundleHandler(this.repository.toString())).getFilters().add(filter);
+		final ExecutorService executor = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "stand-in-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final ScheduledExecutorService delays = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "stand-in-latencia");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(new Executor() {
+			@Override
+			public void execute(final Runnable exchange) {
+				if(latencyMillis <= 0){
+					executor.execute(exchange);
+					return;
+				}
+				delays.schedule(new Runnable() {
+					@Override
+					public void run() {
+						executor.execute(exchange);
+					}
+				}, latencyMillis, TimeUnit.MILLISECONDS);
+			}
+		});
+		this.executor = executor;
+		this.delays = delays;
+		server.start();
+		this.server = server;
+		return this;
+	}
+
+	public synchronized void stop(){
+		if(this.server != null){
+			this.server.stop(0);
+			this.delays.shutdownNow();
+			this.executor.shutdownNow();
+			this.server = null;
+			this.executor = null;
+			this.delays = null;
+		}
+	}
+
+	/**
+	 * @return URL do repositrio, ex: "http://127.0.0.1:54321/repo", usada como remoteTargetFolder do DownloadFile
+	 */
+	public synchronized String getUrl(){
+		if(this.server == null){
+			throw new IllegalStateException("Servidor no iniciado.");
+		}
+		return "http://127.0.0.1:" + this.server.getAddress().getPort() + CONTEXT;
+	}
+
+	/**
+	 * @return URL do {@link BundleHandler} sobre o mesmo repositrio, ex: "http://127.0.0.1:54321/bundle", usada pelo {@link org.reichel.download.BundleFetch}
+	 */
+	public synchronized String getBundleUrl(){
+		if(this.server == null){
+			throw new IllegalStateException("Servidor no iniciado.");
+		}
+		return "http://127.0.0.1:" + this.server.getAddress().getPort() + BUNDLE_CONTEXT;
+	}
+
+	public long getRequests() {
+		return requests.getCount();
+	}
+
+	public long getSentBytes() {
+		return sentBytes.getCount();
+	}
+
+	/**
+	 * @return requisies respondidas com erro, simulado ou no
+	 */
+	public long getFailures() {
+		return failures.getCount();
+	}
+
+	private class ShapingFilter extends Filter {
+
+		@Override
+		public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+			requests.increment();
+			if(failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate){
+				failures.increment();
+				exchange.sendResponseHeaders(500, -1);
+				exchange.close();
+				return;
+			}
+			exchange.setStreams(null, new ShapedOutputStream(exchange.getResponseBody()));
+			chain.doFilter(exchange);
+		}
+
+		@Override
+		public String description() {
+			return "banda e falhas simuladas";
+		}
+	}
+
+	/**
+	 * Conta os bytes enviados e aguarda entre os blocos o necessrio para respeitar a banda.
+	 */
+	private class ShapedOutputStream extends FilterOutputStream {
+
+		private final long start = System.nanoTime();
+
+		private long sent = 0;
+
+		ShapedOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[]{ (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.sent += len;
+			sentBytes.add(len);
+			if(bytesPerSecond > 0){
+				long wait = this.sent * 1000L / bytesPerSecond - (System.nanoTime() - this.start) / 1000000;
+				if(wait > 0){
+					this.out.flush();
+					try {
+						Thread.sleep(wait);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Envio interrompido.");
+					}
+				}
+			}
+		}
+	}
+
+	private class RepositoryHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				Path file = repository.resolve(exchange.getRequestURI().getPath().substring(CONTEXT.length()).replaceFirst("^/+", "")).normalize();
+				if(!file.startsWith(repository) || !Files.isRegularFile(file)){
+					failures.increment();
+					exchange.sendResponseHeaders(404, -1);
+					return;
+				}
+				long length = Files.size(file);
+				exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+				if("HEAD".equals(exchange.getRequestMethod())){
+					exchange.getResponseHeaders().set("Content-Length", Long.toString(length));
+					exchange.sendResponseHeaders(200, -1);
+					return;
+				}
+				exchange.sendResponseHeaders(200, length == 0 ? -1 : length);
+				OutputStream os = exchange.getResponseBody();
+				try {
+					Files.copy(file, os);
+				} finally {
+					os.close();
+				}
+			} catch (IOException e) {
+				failures.increment();
+				logger.debug("Problemas ao enviar '" + exchange.getRequestURI() + "': " + e.getMessage());
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package org.reichel.text;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Padro no formato de {@link MessageFormat} j interpretado, para ser formatado vrias vezes sem
+ * interpretar o padro novamente. Padres com argumentos simples ({0}, {1}...) e aspas simples so
+ * formatados diretamente em um StringBuilder, os que usam tipo ou estilo ({0,number}...) so
+ * delegados a uma instancia de MessageFormat criada uma nica vez.
+ * O resultado  sempre o mesmo de MessageFormat.format(pattern, args).
+ * Instancias so imutveis e podem ser compartilhadas entre threads.
+ */
+public final class MessageTemplate {
+
+	/** Mesmo limite de ndice de argumento de MessageFormat. */
+	private static final int MAX_ARGUMENT = 10000;
+
+	private final String pattern;
+
+	/** Trechos literais, literals[i] antecede o argumento arguments[i]. */
+	private final String[] literals;
+
+	private final int[] arguments;
+
+	private final int literalsLength;
+
+	private final MessageFormat messageFormat;
+
+	private MessageTemplate(String pattern, String[] literals, int[] arguments, MessageFormat messageFormat){
+		this.pattern = pattern;
+		this.literals = literals;
+		this.arguments = arguments;
+		this.messageFormat = messageFormat;
+		int length = 0;
+		if(literals != null){
+			for(String literal : literals){
+				length += literal.length();
+			}
+		}
+		this.literalsLength = length;
+	}
+
+	/**
+	 * @param pattern padro no formato de MessageFormat
+	 * @return padro interpretado
+	 * @throws IllegalArgumentException se o padro for invlido, assim como MessageFormat
+	 */
+	public static MessageTemplate compile(String pattern){
+		if(pattern == null){
+			throw new IllegalArgumentException("Parameter pattern cannot be null.");
+		}
+		List<String> literals = new ArrayList<String>();
+		List<Integer> arguments = new ArrayList<Integer>();
+		StringBuilder literal = new StringBuilder();
+		boolean inQuote = false;
+		int length = pattern.length();
+		for(int i = 0; i < length; i++){
+			char ch = pattern.charAt(i);
+			if(ch == '\''){
+				if(i + 1 < length && pattern.charAt(i + 1) == '\''){
+					literal.append('\'');
+					i++;
+				} else {
+					inQuote = !inQuote;
+				}
+			} else if(ch == '{' && !inQuote){
+				int end = pattern.indexOf('}', i);
+				int argument = end == -1 ? -1 : parseArgument(pattern, i + 1, end);
+				if(argument == -1){
+					return new MessageTemplate(pattern, null, null, new MessageFormat(pattern));
+				}
+				literals.add(literal.toString());
+				arguments.add(argument);
+				literal.setLength(0);
+				i = end;
+			} else {
+				literal.append(ch);
+			}
+		}
+		literals.add(literal.toString());
+		int[] args = new int[arguments.size()];
+		for(int i = 0; i < args.length; i++){
+			args[i] = arguments.get(i);
+		}
+		return new MessageTemplate(pattern, literals.toArray(new String[literals.size()]), args, null);
+	}
+
+	private static int parseArgument(String pattern, int begin, int end) {
+		if(begin == end || end - begin > 5){
+			return -1;
+		}
+		int argument = 0;
+		for(int i = begin; i < end; i++){
+			char ch = pattern.charAt(i);
+			if(ch < '0' || ch > '9'){
+				return -1;
+			}
+			argument = argument * 10 + (ch - '0');
+		}
+		return argument < MAX_ARGUMENT ? argument : -1;
+	}
+
+	public String format(Object... args){
+		if(this.messageFormat != null){
+			synchronized (this.messageFormat) {
+				return this.messageFormat.format(args);
+			}
+		}
+		if(!isPlainArguments(args)){
+			return MessageFormat.format(this.pattern, args);
+		}
+		if(this.arguments.length == 0){
+			return this.literals[0];
+		}
+		return format(new StringBuilder(this.literalsLength + 16 * this.arguments.length), args).toString();
+	}
+
+	/**
+	 * Formata acrescentando o resultado em um StringBuilder j existente.
+	 * @param result StringBuilder que receber o texto formatado
+	 * @param args argumentos
+	 * @return o prprio StringBuilder recebido
+	 */
+	public StringBuilder format(StringBuilder result, Object... args){
+		if(this.messageFormat != null || !isPlainArguments(args)){
+			return result.append(format(args));
+		}
+		for(int i = 0; i < this.arguments.length; i++){
+			result.append(this.literals[i]);
+			int argument = this.arguments[i];
+			if(args == null || argument >= args.length){
+				result.append('{').append(argument).append('}');
+			} else {
+				result.append(args[argument]);
+			}
+		}
+		return result.append(this.literals[this.arguments.length]);
+	}
+
+	/**
+	 * Nmeros e datas so formatados por MessageFormat conforme o Locale, por isso
+	 * somente Strings e nulos so concatenados diretamente.
+	 */
+	private boolean isPlainArguments(Object[] args) {
+		if(args != null){
+			for(Object arg : args){
+				if(arg != null && !(arg instanceof String)){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	@Override
+	public String toString(){
+		return this.pattern;
+	}
+}
@@ -1,10 +1,126 @@
 package org.reichel.text;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.text.Normalizer;
 
 public class TextUtils {
 
+	/**
+	 * Caracteres abaixo deste valor (Latin-1 Supplement, Latin Extended-A e Latin Extended-B)
+	 * so convertidos por tabela, os demais passam pela normalizao.
+	 */
+	private static final int TABLE_SIZE = 0x250;
+
+	private static final String[] FOLDING = new String[TABLE_SIZE];
+
+	private static final int BUFFER_SIZE = 8192;
+
+	static {
+		for(int c = 0; c < TABLE_SIZE; c++){
+			FOLDING[c] = decompose(String.valueOf((char) c));
+		}
+	}
+
+	/**
+	 * Remove acentos e caracteres fora da tabela ASCII, ex: "Joo Conceio" resulta em "Joao Conceicao".
+	 * Texto que j  ASCII  retornado sem cpia.
+	 * @param text texto a ser convertido
+	 * @return texto apenas com caracteres ASCII
+	 */
 	public String removeSpecialCharacters(String text){
-		return Normalizer.normalize(text, java.text.Normalizer.Form.NFD).replaceAll("[^\\p{ASCII}]","");
+		int length = text.length();
+		int ascii = 0;
+		while(ascii < length && text.charAt(ascii) < 0x80){
+			ascii++;
+		}
+		if(ascii == length){
+			return text;
+		}
+		StringBuilder result = new StringBuilder(length);
+		result.append(text, 0, ascii);
+		fold(text, ascii, length, result);
+		return result.toString();
+	}
+
+	/**
+	 * Verso de {@link #removeSpecialCharacters(String)} para arquivos grandes, lidos e gravados em blocos
+	 * sem carregar todo o contedo em memria. Os streams no so fechados.
+	 * @param reader origem do texto
+	 * @param writer destino do texto convertido
+	 * @throws IOException caso ocorra problema na leitura ou gravao
+	 */
+	public void removeSpecialCharacters(Reader reader, Writer writer) throws IOException {
+		if(reader == null){
+			throw new IllegalArgumentException("Parameter reader cannot be null.");
+		}
+		if(writer == null){
+			throw new IllegalArgumentException("Parameter writer cannot be null.");
+		}
+		char[] buffer = new char[BUFFER_SIZE];
+		char[] output = new char[BUFFER_SIZE];
+		StringBuilder folded = new StringBuilder(BUFFER_SIZE);
+		int length = 0;
+		int read;
+		while((read = reader.read(buffer, length, buffer.length - length)) != -1){
+			length += read;
+			//um par de surrogates dividido entre dois blocos  completado na prxima leitura
+			int end = Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+			folded.setLength(0);
+			fold(CharBuffer.wrap(buffer, 0, end), 0, end, folded);
+			output = write(folded, output, writer);
+			length -= end;
+			if(length > 0){
+				buffer[0] = buffer[end];
+			}
+		}
+		if(length > 0){
+			folded.setLength(0);
+			fold(CharBuffer.wrap(buffer, 0, length), 0, length, folded);
+			write(folded, output, writer);
+		}
+		writer.flush();
+	}
+
+	private static char[] write(StringBuilder folded, char[] output, Writer writer) throws IOException {
+		if(folded.length() > output.length){
+			output = new char[folded.length()];
+		}
+		folded.getChars(0, folded.length(), output, 0);
+		writer.write(output, 0, folded.length());
+		return output;
+	}
+
+	private static void fold(CharSequence text, int start, int end, StringBuilder result) {
+		for(int i = start; i < end; i++){
+			char c = text.charAt(i);
+			if(c < 0x80){
+				result.append(c);
+			} else if(c < TABLE_SIZE){
+				result.append(FOLDING[c]);
+			} else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))){
+				result.append(decompose(text.subSequence(i, i + 2).toString()));
+				i++;
+			} else {
+				result.append(decompose(String.valueOf(c)));
+			}
+		}
+	}
+
+	/**
+	 * Decomposio cannica (NFD) seguida da remoo do que no for ASCII, como os acentos separados da letra.
+	 */
+	private static String decompose(String text) {
+		String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+		StringBuilder result = new StringBuilder(normalized.length());
+		for(int i = 0; i < normalized.length(); i++){
+			char c = normalized.charAt(i);
+			if(c < 0x80){
+				result.append(c);
+			}
+		}
+		return result.toString();
 	}
 }
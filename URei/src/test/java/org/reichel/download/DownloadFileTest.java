@@ -0,0 +1,154 @@
+package org.reichel.download;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reichel.command.output.Output;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Origem e computador da rede local em localhost. O arquivo do computador s pode ser usado
+ * quando confere com o SHA-256 publicado pela origem.
+ */
+public class DownloadFileTest {
+
+	private static final byte[] CONTENT = "conteudo da origem".getBytes();
+
+	private static final byte[] FORGED = "conteudo forjado!!".getBytes();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File originFolder;
+
+	private File target;
+
+	private HttpServer origin;
+
+	private PeerCacheServer peer;
+
+	private final AtomicInteger originDownloads = new AtomicInteger();
+
+	@Before
+	public void start() throws IOException {
+		this.originFolder = this.folder.newFolder("origem");
+		this.target = this.folder.newFolder("destino");
+		Files.createDirectories(new File(this.originFolder, "lib").toPath());
+		Files.write(new File(this.originFolder, "lib/core.jar").toPath(), CONTENT);
+		this.origin = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.origin.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					File file = new File(originFolder, exchange.getRequestURI().getPath());
+					if(!file.isFile()){
+						exchange.sendResponseHeaders(404, -1);
+						return;
+					}
+					if(!file.getName().endsWith(DownloadFile.DIGEST_EXTENSION)){
+						originDownloads.incrementAndGet();
+					}
+					exchange.sendResponseHeaders(200, file.length());
+					OutputStream os = exchange.getResponseBody();
+					try {
+						Files.copy(file.toPath(), os);
+					} finally {
+						os.close();
+					}
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		this.origin.start();
+		this.peer = new PeerCacheServer(new PeerCache(this.folder.newFolder("cache").getPath())).start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	@After
+	public void stop() {
+		this.peer.stop();
+		this.origin.stop(0);
+	}
+
+	@Test
+	public void usesPeerWhenDigestMatches() throws IOException {
+		DownloadFile.writeDigest(new File(this.originFolder, "lib/core.jar"));
+		cache(CONTENT);
+		download();
+		assertArrayEquals(CONTENT, Files.readAllBytes(new File(this.target, "lib/core.jar").toPath()));
+		assertEquals(0, this.originDownloads.get());
+	}
+
+	@Test
+	public void discardsForgedPeerContent() throws IOException {
+		DownloadFile.writeDigest(new File(this.originFolder, "lib/core.jar"));
+		cache(FORGED);
+		download();
+		assertArrayEquals(CONTENT, Files.readAllBytes(new File(this.target, "lib/core.jar").toPath()));
+		assertEquals(1, this.originDownloads.get());
+	}
+
+	@Test
+	public void ignoresPeerWithoutPublishedDigest() throws IOException {
+		cache(FORGED);
+		download();
+		assertArrayEquals(CONTENT, Files.readAllBytes(new File(this.target, "lib/core.jar").toPath()));
+		assertEquals(1, this.originDownloads.get());
+	}
+
+	@Test
+	public void ignoresPeerWhenOriginIsUnreachable() throws IOException {
+		DownloadFile.writeDigest(new File(this.originFolder, "lib/core.jar"));
+		cache(FORGED);
+		String originUrl = originUrl();
+		this.origin.stop(0);
+		try {
+			newDownloadFile(originUrl).download("lib/core.jar", this.target.getPath());
+			fail("download sem origem deveria falhar");
+		} catch (IOException e) {
+			//esperado, o arquivo do computador no pode ser conferido
+		}
+		assertFalse(new File(this.target, "lib/core.jar").exists());
+	}
+
+	private void cache(byte[] content) throws IOException {
+		File file = this.folder.newFile();
+		Files.write(file.toPath(), content);
+		this.peer.getCache().store(new URL(originUrl() + "/lib/core.jar"), file, 0);
+	}
+
+	private void download() throws IOException {
+		newDownloadFile(originUrl()).download("lib/core.jar", this.target.getPath());
+	}
+
+	private DownloadFile newDownloadFile(String originUrl) throws IOException {
+		return new DownloadFile(new Output<Integer>() {
+			@Override
+			public void output(Integer output) {
+			}
+		}, originUrl).peers("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + this.peer.getPort());
+	}
+
+	private String originUrl() {
+		return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + this.origin.getAddress().getPort();
+	}
+}
@@ -0,0 +1,97 @@
+package org.reichel.file;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * rvore com um link para um diretrio irmo (link -&gt; real) e um link para a raiz (real/sub/loop -&gt; raiz).
+ * O primeiro deve ser seguido como File.listFiles() fazia, o segundo formaria um ciclo.
+ */
+public class FindFilesTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path root;
+
+	private final Collection<String> expected = new TreeSet<String>(Arrays.asList(
+			"link/a.jar", "link/sub/b.jar", "real/a.jar", "real/sub/b.jar"));
+
+	@Before
+	public void createTree() throws IOException {
+		this.root = this.folder.getRoot().toPath().toRealPath();
+		Path real = Files.createDirectories(this.root.resolve("real").resolve("sub"));
+		Files.createFile(this.root.resolve("real").resolve("a.jar"));
+		Files.createFile(real.resolve("b.jar"));
+		Files.createFile(real.resolve("c.txt"));
+		try {
+			Files.createSymbolicLink(this.root.resolve("link"), this.root.resolve("real"));
+			Files.createSymbolicLink(real.resolve("loop"), this.root);
+		} catch (UnsupportedOperationException e) {
+			Assume.assumeNoException(e);
+		} catch (IOException e) {
+			//Windows sem permisso para criar links simblicos
+			Assume.assumeNoException(e);
+		}
+	}
+
+	@Test
+	public void followsLinksWithoutDepthLimit() {
+		assertEquals(this.expected, relative(new FindFiles().findFileByExtension(this.root.toString(), ".jar")));
+	}
+
+	@Test
+	public void followsLinksWithDepthLimit() {
+		assertEquals(this.expected, relative(new FindFiles().deep(3).findFiles(this.root.toString(), ".jar")));
+	}
+
+	@Test
+	public void iteratorFollowsLinks() {
+		FileIterator files = new FindFiles().iterateFiles(this.root.toString(), ".jar");
+		List<File> result = new ArrayList<File>();
+		try {
+			while(files.hasNext()){
+				result.add(files.next());
+			}
+		} finally {
+			files.close();
+		}
+		assertEquals(this.expected, relative(result));
+	}
+
+	@Test
+	public void limitedSearchFollowsLinks() {
+		assertEquals(this.expected, relative(new FindFiles().limit(100).findFiles(this.root.toString(), ".jar")));
+	}
+
+	@Test
+	public void cachedSearchFollowsLinks() throws IOException {
+		DirectoryCache cache = new DirectoryCache(this.folder.newFile("dircache").getPath());
+		assertEquals(this.expected, relative(new FindFiles().cache(cache).findFiles(this.root.toString(), ".jar")));
+		assertEquals(this.expected, relative(new FindFiles().cache(cache).findFiles(this.root.toString(), ".jar")));
+	}
+
+	private Collection<String> relative(List<File> files) {
+		Collection<String> result = new TreeSet<String>();
+		for(File file : files){
+			result.add(this.root.relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+		}
+		assertEquals("arquivos repetidos: " + files, files.size(), result.size());
+		return result;
+	}
+}
@@ -0,0 +1,209 @@
+package org.reichel.jar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * O JarVersionMap deve se comportar como um HashMap de caminho para verso, inclusive com verses
+ * que no cabem na forma compactada e com remoes durante a iterao.
+ */
+public class JarVersionMapTest {
+
+	private static final String SEP = String.valueOf(File.separatorChar);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void putGetRemove() {
+		JarVersionMap map = new JarVersionMap();
+		assertNull(map.put(path("lib", "core.jar"), version("1.2.3", path("lib", "core.jar"))));
+		assertNull(map.put(path("lib", "ext", "core.jar"), version("4.5.6", path("lib", "ext", "core.jar"))));
+		assertNull(map.put("core.jar", version("7", "core.jar")));
+		assertEquals(3, map.size());
+		assertEquals("1.2.3", map.get(path("lib", "core.jar")).toString());
+		assertEquals("4.5.6", map.get(path("lib", "ext", "core.jar")).toString());
+		assertEquals("7.0.0", map.get("core.jar").toString());
+		assertNull(map.get(path("ext", "core.jar")));
+		assertNull(map.get(path("lib", "core")));
+		assertEquals("1.2.3", map.put(path("lib", "core.jar"), version("1.2.4", path("lib", "core.jar"))).toString());
+		assertEquals("1.2.4", map.remove(path("lib", "core.jar")).toString());
+		assertFalse(map.containsKey(path("lib", "core.jar")));
+		assertEquals(2, map.size());
+	}
+
+	@Test
+	public void keepsFileNameDifferentFromKey() {
+		JarVersionMap map = new JarVersionMap();
+		map.put(path("lib", "core.jar"), version("1.0.0", "core.jar"));
+		assertEquals("core.jar", map.get(path("lib", "core.jar")).getFileName());
+		map.put(path("lib", "core.jar"), version("1.0.1", path("lib", "core.jar")));
+		assertEquals(path("lib", "core.jar"), map.get(path("lib", "core.jar")).getFileName());
+	}
+
+	@Test
+	public void acceptsVersionsAboveTwentyOneBits() {
+		JarVersionMap map = new JarVersionMap();
+		String key = path("lib", "a.jar");
+		map.put(key, version("2.0.20231015", key));
+		map.put(path("lib", "b.jar"), new JarVersion(Integer.MAX_VALUE, 0, 1, "b.jar", JarTypeEnum.JAR_EXPLODED));
+		assertEquals("2.0.20231015", map.get(key).toString());
+		assertEquals(key, map.get(key).getFileName());
+		JarVersion b = map.get(path("lib", "b.jar"));
+		assertEquals(Integer.MAX_VALUE + ".0.1", b.toString());
+		assertEquals("b.jar", b.getFileName());
+		assertEquals(JarTypeEnum.JAR_EXPLODED, b.getJarTypeEnum());
+		assertEquals("2.0.20231015", map.put(key, version("2.0.1", key)).toString());
+		assertEquals("2.0.1", map.get(key).toString());
+		assertEquals("2.0.1", map.put(key, version("3.0.20240101", key)).toString());
+		assertEquals("3.0.20240101", map.remove(key).toString());
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	public void acceptsNullVersions() {
+		JarVersionMap map = new JarVersionMap();
+		assertNull(map.put(path("lib", "terceiro.jar"), null));
+		assertTrue(map.containsKey(path("lib", "terceiro.jar")));
+		assertNull(map.get(path("lib", "terceiro.jar")));
+		assertEquals(1, map.size());
+		assertNull(map.put(path("lib", "terceiro.jar"), version("1.0.0", path("lib", "terceiro.jar"))));
+		assertEquals("1.0.0", map.put(path("lib", "terceiro.jar"), null).toString());
+		assertNull(map.entrySet().iterator().next().getValue());
+	}
+
+	@Test
+	public void scansJarsWithoutImplementationVersion() throws IOException {
+		File root = this.folder.newFolder("raiz");
+		Manifest versioned = new Manifest();
+		versioned.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		versioned.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, "1.2.3");
+		Manifest unversioned = new Manifest();
+		unversioned.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		new File(root, "lib").mkdirs();
+		writeJar(new File(root, path("lib", "core.jar")), versioned);
+		writeJar(new File(root, path("lib", "terceiro.jar")), unversioned);
+		JarUtils jarUtils = new JarUtils();
+		Map<String, JarVersion> map = jarUtils.getJarVersions(root.getPath(), new JarVersionMap());
+		assertEquals(describe(jarUtils.getJarVersions(root.getPath(), new HashMap<String, JarVersion>())), describe(map));
+		assertEquals(2, map.size());
+		assertEquals("1.2.3", map.get(path("lib", "core.jar")).toString());
+		assertTrue(map.containsKey(path("lib", "terceiro.jar")));
+		assertNull(map.get(path("lib", "terceiro.jar")));
+	}
+
+	@Test
+	public void behavesLikeHashMap() {
+		Random random = new Random(20240101);
+		String[] keys = new String[500];
+		for(int i = 0; i < keys.length; i++){
+			int depth = random.nextInt(4);
+			StringBuilder key = new StringBuilder();
+			for(int d = 0; d < depth; d++){
+				key.append("dir").append(random.nextInt(5)).append(File.separatorChar);
+			}
+			keys[i] = key.append("lib").append(i % 97).append(".jar").toString();
+		}
+		JarVersionMap map = new JarVersionMap(0);
+		Map<String, JarVersion> expected = new HashMap<String, JarVersion>();
+		for(int operation = 0; operation < 20000; operation++){
+			String key = keys[random.nextInt(keys.length)];
+			int kind = random.nextInt(100);
+			if(kind < 50){
+				JarVersion value = randomVersion(random, key);
+				assertSame(expected.put(key, value), map.put(key, value));
+			} else if(kind < 80){
+				assertSame(expected.remove(key), map.remove(key));
+			} else if(kind < 99){
+				assertSame(expected.get(key), map.get(key));
+				assertEquals(expected.containsKey(key), map.containsKey(key));
+			} else {
+				Iterator<Entry<String, JarVersion>> iterator = map.entrySet().iterator();
+				while(iterator.hasNext()){
+					Entry<String, JarVersion> entry = iterator.next();
+					assertSame(expected.get(entry.getKey()), entry.getValue());
+					if(random.nextBoolean()){
+						iterator.remove();
+						expected.remove(entry.getKey());
+					}
+				}
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		assertEquals(describe(expected), describe(map));
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(keys[0]));
+	}
+
+	private static void writeJar(File file, Manifest manifest) throws IOException {
+		JarOutputStream jos = new JarOutputStream(new FileOutputStream(file), manifest);
+		try {
+			jos.putNextEntry(new ZipEntry("a.txt"));
+			jos.write("a".getBytes());
+			jos.closeEntry();
+		} finally {
+			jos.close();
+		}
+	}
+
+	private static JarVersion randomVersion(Random random, String key) {
+		if(random.nextInt(20) == 0){
+			return null;
+		}
+		int maintenance = random.nextInt(10) == 0 ? 20000000 + random.nextInt(1000000) : random.nextInt(100);
+		String fileName = random.nextInt(10) == 0 ? "outro.jar" : key;
+		JarTypeEnum type = JarTypeEnum.values()[random.nextInt(JarTypeEnum.values().length)];
+		return new JarVersion(random.nextInt(10), random.nextInt(10), maintenance, fileName, type);
+	}
+
+	private static void assertSame(JarVersion expected, JarVersion actual) {
+		assertEquals(describe(expected), describe(actual));
+	}
+
+	private static Map<String, String> describe(Map<String, JarVersion> jarVersions) {
+		Map<String, String> result = new HashMap<String, String>();
+		for(Entry<String, JarVersion> entry : jarVersions.entrySet()){
+			result.put(entry.getKey(), describe(entry.getValue()));
+		}
+		return result;
+	}
+
+	private static String describe(JarVersion jarVersion) {
+		return jarVersion == null ? null : jarVersion + " " + jarVersion.getFileName() + " " + jarVersion.getJarTypeEnum();
+	}
+
+	private static JarVersion version(String version, String fileName) {
+		return new JarVersion(version, fileName, JarTypeEnum.JAR);
+	}
+
+	private static String path(String ... segments) {
+		StringBuilder path = new StringBuilder();
+		for(String segment : segments){
+			if(path.length() > 0){
+				path.append(SEP);
+			}
+			path.append(segment);
+		}
+		return path.toString();
+	}
+}